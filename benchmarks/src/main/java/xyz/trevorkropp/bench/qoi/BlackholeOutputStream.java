@@ -0,0 +1,29 @@
+package xyz.trevorkropp.bench.qoi;
+
+import java.io.OutputStream;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Discards everything written to it, without letting the JIT drop the writes.
+ */
+final class BlackholeOutputStream extends OutputStream {
+
+    private final Blackhole blackhole;
+
+    BlackholeOutputStream(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public void write(int b) {
+        blackhole.consume(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        blackhole.consume(b);
+        blackhole.consume(len);
+    }
+
+}
@@ -0,0 +1,88 @@
+package xyz.trevorkropp.bench.qoi;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import xyz.trevorkropp.qoi.Image;
+import xyz.trevorkropp.qoi.QoizOutputStream;
+import xyz.trevorkropp.qoi.StandardEncoder;
+
+/**
+ * Encode-and-compress throughput of raw QOI, the Deflate-wrapped qoi.z
+ * container at several levels and PNG, with the output of each reported as
+ * the {@code encodedBytes} rate (see {@link EncodedSize}). Level only applies
+ * to qoiz; the other cases repeat for each level.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContainerBenchmark {
+
+    @Param({ "gradient", "noise", "scribbles" })
+    public String content;
+
+    @Param({ "1024" })
+    public int size;
+
+    @Param({ "1", "6", "9" })
+    public int level;
+
+    private Image image;
+    private BufferedImage buffered;
+
+    @Setup
+    public void setup() {
+        image = Images.create(content, size, size);
+        buffered = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int rgba = image.getPixel(x, y);
+                buffered.setRGB(x, y, rgba >>> 8 | rgba << 24);
+            }
+        }
+    }
+
+    @Benchmark
+    public void rawQoi(Throughput throughput, EncodedSize encoded) throws IOException {
+        ByteArrayOutputStream out = encoded.reset();
+        StandardEncoder.encode(out, image);
+        encoded.record(out);
+        throughput.add((long) size * size);
+    }
+
+    @Benchmark
+    public void qoiz(Throughput throughput, EncodedSize encoded) throws IOException {
+        ByteArrayOutputStream out = encoded.reset();
+        QoizOutputStream.encode(out, image, level);
+        encoded.record(out);
+        throughput.add((long) size * size);
+    }
+
+    @Benchmark
+    public void png(Throughput throughput, EncodedSize encoded) throws IOException {
+        ByteArrayOutputStream out = encoded.reset();
+        ImageIO.write(buffered, "png", out);
+        encoded.record(out);
+        throughput.add((long) size * size);
+    }
+
+}
@@ -0,0 +1,58 @@
+package xyz.trevorkropp.bench.qoi;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import xyz.trevorkropp.qoi.Image;
+import xyz.trevorkropp.qoi.StandardDecoder;
+import xyz.trevorkropp.qoi.StandardEncoder;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param({ "flat", "gradient", "noise", "alpha", "scribbles" })
+    public String content;
+
+    @Param({ "256", "1024", "4096" })
+    public int size;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        encoded = StandardEncoder.encodeToByteArray(Images.create(content, size, size));
+    }
+
+    @Benchmark
+    public Image decodeByteArray(Throughput throughput) throws IOException {
+        Image image = StandardDecoder.decode(encoded);
+        throughput.add((long) size * size);
+        return image;
+    }
+
+    @Benchmark
+    public Image decodeStream(Throughput throughput) throws IOException {
+        Image image = StandardDecoder.decode(new ByteArrayInputStream(encoded));
+        throughput.add((long) size * size);
+        return image;
+    }
+
+}
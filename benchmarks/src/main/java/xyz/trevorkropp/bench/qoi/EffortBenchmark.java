@@ -0,0 +1,61 @@
+package xyz.trevorkropp.bench.qoi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import xyz.trevorkropp.qoi.Image;
+import xyz.trevorkropp.qoi.StandardEncoder;
+
+/**
+ * Encode throughput and output size at each effort level. Only images with
+ * fully transparent pixels are affected, so the content is limited to those.
+ * In "alpha", half the pixels are transparent, all of one color, so they
+ * already form runs. In "scribbles", 18% are, in a couple of hundred shades
+ * of gray, and "sprites" has random colors behind the same pixels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EffortBenchmark {
+
+    @Param({ "alpha", "scribbles", "sprites" })
+    public String content;
+
+    @Param({ "1024" })
+    public int size;
+
+    @Param({ "0", "1", "2" })
+    public int effort;
+
+    private Image image;
+
+    @Setup
+    public void setup() {
+        image = Images.create(content, size, size);
+    }
+
+    @Benchmark
+    public void encode(Throughput throughput, EncodedSize encoded) throws IOException {
+        ByteArrayOutputStream out = encoded.reset();
+        StandardEncoder.encode(out, image, effort);
+        encoded.record(out);
+        throughput.add((long) size * size);
+    }
+
+}
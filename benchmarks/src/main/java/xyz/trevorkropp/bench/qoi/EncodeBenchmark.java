@@ -0,0 +1,82 @@
+package xyz.trevorkropp.bench.qoi;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import xyz.trevorkropp.qoi.Image;
+import xyz.trevorkropp.qoi.ParallelEncoder;
+import xyz.trevorkropp.qoi.StandardEncoder;
+import xyz.trevorkropp.qoi.StreamingEncoder;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeBenchmark {
+
+    @Param({ "flat", "gradient", "noise", "alpha", "scribbles" })
+    public String content;
+
+    @Param({ "256", "1024", "4096" })
+    public int size;
+
+    private Image image;
+    private int[][] rows;
+
+    @Setup
+    public void setup() {
+        image = Images.create(content, size, size);
+        rows = new int[size][size];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                rows[y][x] = image.getPixel(x, y);
+            }
+        }
+    }
+
+    @Benchmark
+    public void encodeToStream(Throughput throughput, Blackhole blackhole) throws IOException {
+        StandardEncoder.encode(new BlackholeOutputStream(blackhole), image);
+        throughput.add((long) size * size);
+    }
+
+    @Benchmark
+    public byte[] encodeToByteArray(Throughput throughput) {
+        byte[] bytes = StandardEncoder.encodeToByteArray(image);
+        throughput.add((long) size * size);
+        return bytes;
+    }
+
+    @Benchmark
+    public void encodeParallel(Throughput throughput, Blackhole blackhole) throws IOException {
+        ParallelEncoder.encode(new BlackholeOutputStream(blackhole), image);
+        throughput.add((long) size * size);
+    }
+
+    @Benchmark
+    public void encodeStreamingRows(Throughput throughput, Blackhole blackhole) throws IOException {
+        StreamingEncoder encoder = new StreamingEncoder(new BlackholeOutputStream(blackhole));
+        encoder.begin(size, size, image.isAlpha() ? 4 : 3);
+        for (int[] row : rows) {
+            encoder.writeRow(row);
+        }
+        encoder.finish();
+        throughput.add((long) size * size);
+    }
+
+}
@@ -0,0 +1,40 @@
+package xyz.trevorkropp.bench.qoi;
+
+import java.io.ByteArrayOutputStream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Encoded bytes per second, reported as the {@code encodedBytes} rate next
+ * to the throughput. Divided by {@code rawBytes} it is the compression ratio,
+ * and divided by ops/s it is the size of one encoded image. It is a rate
+ * because JMH sums plain counters over the iterations. Benchmarks encode into
+ * the stream it hands out.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class EncodedSize {
+
+    public long encodedBytes;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        encodedBytes = 0;
+    }
+
+    ByteArrayOutputStream reset() {
+        out.reset();
+        return out;
+    }
+
+    void record(ByteArrayOutputStream written) {
+        encodedBytes += written.size();
+    }
+
+}
@@ -0,0 +1,116 @@
+package xyz.trevorkropp.bench.qoi;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import xyz.trevorkropp.qoi.Image;
+
+/**
+ * Benchmark inputs. Every kind of content can be generated at any size; the
+ * real image is tiled to fill it.
+ */
+public final class Images {
+
+    private Images() {
+    }
+
+    public static Image create(String content, int width, int height) {
+        switch (content) {
+            case "flat":
+                return new Image(width, height, 0x336699FF);
+            case "gradient":
+                return gradient(width, height);
+            case "noise":
+                return noise(width, height);
+            case "alpha":
+                return alpha(width, height);
+            case "sprites":
+                return sprites(width, height);
+            case "scribbles":
+                return tiled("scribbles.png", width, height);
+            default:
+                throw new IllegalArgumentException("unknown content: " + content);
+        }
+    }
+
+    private static Image gradient(int width, int height) {
+        Image image = new Image(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = x * 255 / Math.max(width - 1, 1);
+                int g = y * 255 / Math.max(height - 1, 1);
+                int b = (x + y) & 0xFF;
+                image.setPixel(x, y, r << 24 | g << 16 | b << 8 | 0xFF);
+            }
+        }
+        return image;
+    }
+
+    private static Image noise(int width, int height) {
+        Image image = new Image(width, height);
+        Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setPixel(x, y, random.nextInt() | 0xFF);
+            }
+        }
+        return image;
+    }
+
+    private static Image alpha(int width, int height) {
+        Image image = new Image(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int a = (((x / 16) ^ (y / 16)) & 1) == 0 ? 0 : (x * 7 + y * 3) & 0xFF;
+                image.setPixel(x, y, 0x20406000 | a);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * The scribbles image with random RGB behind its transparent pixels, as
+     * editors often leave it.
+     */
+    private static Image sprites(int width, int height) {
+        Image image = tiled("scribbles.png", width, height);
+        Random random = new Random(width * 31L + height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if ((image.getPixel(x, y) & 0xFF) == 0) {
+                    image.setPixel(x, y, random.nextInt() & ~0xFF);
+                }
+            }
+        }
+        return image;
+    }
+
+    private static Image tiled(String name, int width, int height) {
+        BufferedImage tile = read(name);
+        Image image = new Image(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int argb = tile.getRGB(x % tile.getWidth(), y % tile.getHeight());
+                image.setPixel(x, y, argb << 8 | argb >>> 24);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage read(String name) {
+        try (InputStream in = Images.class.getResourceAsStream("/img/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("missing benchmark image: " + name);
+            }
+            return ImageIO.read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
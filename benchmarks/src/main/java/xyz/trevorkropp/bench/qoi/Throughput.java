@@ -0,0 +1,31 @@
+package xyz.trevorkropp.bench.qoi;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary results reported as rates next to ops/s: pixels per second and
+ * uncompressed RGBA bytes per second.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+    public long pixels;
+    public long rawBytes;
+
+    @Setup(Level.Iteration)
+    public void clear() {
+        pixels = 0;
+        rawBytes = 0;
+    }
+
+    void add(long pixelCount) {
+        pixels += pixelCount;
+        rawBytes += pixelCount * 4;
+    }
+
+}
@@ -0,0 +1,220 @@
+package xyz.trevorkropp.qoi;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousByteChannel;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Encodes images to asynchronous channels without blocking a thread on I/O.
+ * Each image is encoded block by block on the executor into two pooled
+ * buffers: while one block is being written through a completion handler,
+ * the next one is encoded into the other. Only one write per image is pending
+ * at a time.
+ */
+public class AsyncEncoder {
+
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<byte[]> blocks = new ConcurrentLinkedQueue<>();
+
+    public AsyncEncoder() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public AsyncEncoder(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Writes the image to {@code channel} starting at {@code position}. The
+     * future completes with the number of bytes written.
+     */
+    public CompletableFuture<Long> encodeAsync(Image image, AsynchronousFileChannel channel, long position) {
+        return start(image, new FileSink(channel, position));
+    }
+
+    /**
+     * Writes the image to {@code channel}, for example a socket. No other
+     * writes may be made to the channel until the future completes with the
+     * number of bytes written.
+     */
+    public CompletableFuture<Long> encodeAsync(Image image, AsynchronousByteChannel channel) {
+        return start(image, new ByteChannelSink(channel));
+    }
+
+    private CompletableFuture<Long> start(Image image, Sink sink) {
+        Job job = new Job(image, sink);
+        executor.execute(() -> job.encodeBlock(0, CompletableFuture.completedFuture(null)));
+        return job.result;
+    }
+
+    private byte[] takeBlock() {
+        byte[] block = blocks.poll();
+        return block != null ? block : new byte[StandardEncoder.BlockSize];
+    }
+
+    private final class Job {
+
+        private final Image image;
+        private final Sink sink;
+        private final byte[][] buffers = { takeBlock(), takeBlock() };
+        private final ChunkEncoder chunks;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        private int next;
+
+        Job(Image image, Sink sink) {
+            this.image = image;
+            this.sink = sink;
+            this.chunks = new ChunkEncoder(null, buffers[0]);
+        }
+
+        /**
+         * Encodes block {@code k} into the buffer that block {@code k - 2}
+         * used, which is free again because {@code previousWrite}, the write
+         * of block {@code k - 1}, only started after it completed.
+         */
+        void encodeBlock(int k, CompletableFuture<Void> previousWrite) {
+            boolean last;
+            ByteBuffer data;
+            try {
+                byte[] block = buffers[k & 1];
+                int size = image.getWidth() * image.getHeight();
+                if (k == 0) {
+                    chunks.reset();
+                    chunks.writeHeader(image);
+                } else {
+                    chunks.setBuffer(block);
+                }
+                next = chunks.encodePart(image.isAlpha(), image.getPixels(), next, size);
+                last = next == size && chunks.remaining() > StandardEncoder.EndMarkerSize;
+                if (last) {
+                    chunks.finish();
+                }
+                data = ByteBuffer.wrap(block, 0, chunks.getPosition());
+            } catch (Throwable e) {
+                previousWrite.whenComplete((v, f) -> fail(e));
+                return;
+            }
+            CompletableFuture<Void> write = previousWrite.thenCompose(v -> sink.write(data));
+            if (last) {
+                write.whenComplete((v, e) -> {
+                    if (e != null) {
+                        fail(e);
+                    } else {
+                        release();
+                        result.complete(chunks.getEncodedSize());
+                    }
+                });
+            } else {
+                previousWrite.whenComplete((v, e) -> {
+                    if (e != null) {
+                        fail(e);
+                    } else {
+                        executor.execute(() -> encodeBlock(k + 1, write));
+                    }
+                });
+            }
+        }
+
+        private void fail(Throwable e) {
+            if (e instanceof CompletionException && e.getCause() != null) {
+                e = e.getCause();
+            }
+            // a write may still be pending, so the buffers are not reused
+            result.completeExceptionally(e);
+        }
+
+        private void release() {
+            blocks.offer(buffers[0]);
+            blocks.offer(buffers[1]);
+        }
+
+    }
+
+    /**
+     * Writes a buffer completely, one pending write at a time.
+     */
+    private abstract static class Sink implements CompletionHandler<Integer, ByteBuffer> {
+
+        private CompletableFuture<Void> pending;
+
+        CompletableFuture<Void> write(ByteBuffer data) {
+            pending = new CompletableFuture<>();
+            try {
+                startWrite(data);
+            } catch (Throwable e) {
+                pending.completeExceptionally(e);
+            }
+            return pending;
+        }
+
+        abstract void startWrite(ByteBuffer data);
+
+        void written(int count) {
+        }
+
+        @Override
+        public void completed(Integer count, ByteBuffer data) {
+            written(count);
+            if (!data.hasRemaining()) {
+                pending.complete(null);
+                return;
+            }
+            try {
+                startWrite(data);
+            } catch (Throwable e) {
+                pending.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void failed(Throwable e, ByteBuffer data) {
+            pending.completeExceptionally(e);
+        }
+
+    }
+
+    private static final class FileSink extends Sink {
+
+        private final AsynchronousFileChannel channel;
+        private long position;
+
+        FileSink(AsynchronousFileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        void startWrite(ByteBuffer data) {
+            channel.write(data, position, data, this);
+        }
+
+        @Override
+        void written(int count) {
+            position += count;
+        }
+
+    }
+
+    private static final class ByteChannelSink extends Sink {
+
+        private final AsynchronousByteChannel channel;
+
+        ByteChannelSink(AsynchronousByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        void startWrite(ByteBuffer data) {
+            channel.write(data, data, this);
+        }
+
+    }
+
+}
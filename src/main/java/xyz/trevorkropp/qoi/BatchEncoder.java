@@ -0,0 +1,76 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Encodes images concurrently on an executor. Encoders and their output
+ * buffers are pooled rather than kept per thread, so they are reused even on
+ * executors that start a new thread per task, such as virtual threads.
+ */
+public class BatchEncoder {
+
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Worker> workers = new ConcurrentLinkedQueue<>();
+
+    public BatchEncoder() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public BatchEncoder(Executor executor) {
+        this.executor = executor;
+    }
+
+    public CompletableFuture<byte[]> submit(Image image) {
+        return CompletableFuture.supplyAsync(() -> encode(image), executor);
+    }
+
+    /**
+     * Returns one future per image, in iteration order.
+     */
+    public List<CompletableFuture<byte[]>> submitAll(Collection<? extends Image> images) {
+        List<CompletableFuture<byte[]>> results = new ArrayList<>(images.size());
+        for (Image image : images) {
+            results.add(submit(image));
+        }
+        return results;
+    }
+
+    private byte[] encode(Image image) {
+        Worker worker = workers.poll();
+        if (worker == null) {
+            worker = new Worker();
+        }
+        try {
+            return worker.encode(image);
+        } finally {
+            workers.offer(worker);
+        }
+    }
+
+    private static class Worker {
+
+        private final StandardEncoder encoder = new StandardEncoder();
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(StandardEncoder.BlockSize);
+
+        byte[] encode(Image image) {
+            out.reset();
+            encoder.reset(out, image);
+            try {
+                encoder.encode();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return out.toByteArray();
+        }
+
+    }
+
+}
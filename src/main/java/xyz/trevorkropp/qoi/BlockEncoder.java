@@ -0,0 +1,55 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.IOException;
+
+/**
+ * Encodes an image one block at a time into buffers handed in by the caller,
+ * for encoders that produce output when it is asked for rather than pushing
+ * it to a stream. Every block but the last is nearly full.
+ */
+final class BlockEncoder {
+
+    // room for the header, a few chunks and the end marker
+    static final int MinBlockSize = 64;
+
+    private final Image image;
+    private ChunkEncoder chunks;
+    private int next;
+    private boolean finished;
+
+    BlockEncoder(Image image) {
+        this.image = image;
+    }
+
+    /**
+     * Encodes the next block into {@code block} and returns its length.
+     */
+    int encode(byte[] block) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("image is already encoded");
+        }
+        if (chunks == null) {
+            chunks = new ChunkEncoder(null, block);
+            chunks.reset();
+            chunks.writeHeader(image);
+        } else {
+            chunks.setBuffer(block);
+        }
+        int size = image.getWidth() * image.getHeight();
+        next = chunks.encodePart(image.isAlpha(), image.getPixels(), next, size);
+        if (next == size && chunks.remaining() > StandardEncoder.EndMarkerSize) {
+            chunks.finish();
+            finished = true;
+        }
+        return chunks.getPosition();
+    }
+
+    boolean isFinished() {
+        return finished;
+    }
+
+    long getEncodedSize() {
+        return chunks == null ? 0 : chunks.getEncodedSize();
+    }
+
+}
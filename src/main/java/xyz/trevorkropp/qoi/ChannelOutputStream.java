@@ -0,0 +1,43 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes blocks to a channel through a direct buffer of the same size, so
+ * each block goes to the channel in a single call without the temporary
+ * buffers NIO allocates for heap arrays.
+ */
+final class ChannelOutputStream extends OutputStream {
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer direct;
+
+    ChannelOutputStream(WritableByteChannel channel, int blockSize) {
+        this.channel = channel;
+        this.direct = ByteBuffer.allocateDirect(blockSize);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int count = Math.min(len, direct.capacity());
+            direct.clear();
+            direct.put(b, off, count);
+            direct.flip();
+            while (direct.hasRemaining()) {
+                channel.write(direct);
+            }
+            off += count;
+            len -= count;
+        }
+    }
+
+}
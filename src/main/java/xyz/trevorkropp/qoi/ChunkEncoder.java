@@ -0,0 +1,625 @@
+package xyz.trevorkropp.qoi;
+
+import static xyz.trevorkropp.qoi.StandardEncoder.EndMarkerSize;
+import static xyz.trevorkropp.qoi.StandardEncoder.MaxChunkSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Encoder state shared by the encoders: the index cache, the previous pixel,
+ * the pending run and the output buffer. The state carries over between calls
+ * to {@link #encode(int[], int, int)}, so an image can be fed in any number of
+ * pieces.
+ */
+final class ChunkEncoder {
+
+    static final int InitialPixel = 0x000000FF;
+
+    static final int OpRun = 1;
+    static final int OpDiff = 2;
+    static final int OpLuma = 3;
+    static final int OpRGB = 4;
+    static final int OpRGBA = 5;
+    static final int OpIndex = 6;
+
+    private final int[] cache = new int[64];
+    private int prev;
+    private int runLength;
+
+    private OutputStream out;
+    private byte[] buffer;
+    private int pos;
+    private long flushed;
+
+    private long[] opCounts;
+
+    /**
+     * With a stream, {@code buffer} is flushed to it whenever it fills up.
+     * Without one, {@code buffer} must be large enough for the whole output.
+     */
+    ChunkEncoder(OutputStream out, byte[] buffer) {
+        this.out = out;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Switches to another stream, growing the block buffer to
+     * {@code blockSize} if it is smaller.
+     */
+    void setOutput(OutputStream out, int blockSize) {
+        this.out = out;
+        if (buffer.length < blockSize) {
+            buffer = new byte[blockSize];
+        }
+    }
+
+    void reset() {
+        resetState();
+        pos = 0;
+        flushed = 0;
+        if (opCounts != null) {
+            Arrays.fill(opCounts, 0);
+        }
+    }
+
+    /**
+     * Starts over from the initial decoder state without discarding output,
+     * as at the start of an image.
+     */
+    void resetState() {
+        Arrays.fill(cache, 0);
+        prev = InitialPixel;
+        runLength = 0;
+    }
+
+    /**
+     * Writes the pending run, so the chunks written so far cover exactly the
+     * pixels encoded so far.
+     */
+    void endRun() throws IOException {
+        if (runLength > 0) {
+            if (pos == buffer.length) {
+                flush();
+            }
+            writeRunChunk();
+            runLength = 0;
+        }
+    }
+
+    /**
+     * Continues as if {@code pixel} had just been encoded, without touching
+     * the index cache. The run must have been ended.
+     */
+    void setPrevious(int pixel) {
+        prev = pixel;
+    }
+
+    int getPrevious() {
+        return prev;
+    }
+
+    int getCached(int index) {
+        return cache[index];
+    }
+
+    /**
+     * Encodes {@code count} copies of {@code pixel}, which become a single
+     * chunk followed by a run.
+     */
+    void encodeRepeated(int pixel, int count) throws IOException {
+        if (pos > buffer.length - (MaxChunkSize + 1)) {
+            flush();
+        }
+        if (pixel != prev) {
+            writeChunk(pixel);
+            count--;
+        }
+        if (count > 0) {
+            extendRun(pixel, count);
+        }
+    }
+
+    void writeByte(int value) throws IOException {
+        if (pos == buffer.length) {
+            flush();
+        }
+        buffer[pos++] = (byte) value;
+    }
+
+    /**
+     * Writes an unsigned LEB128 number, for containers that put their own
+     * framing between chunks.
+     */
+    void writeVarInt(int value) throws IOException {
+        if (buffer.length - pos < 5) {
+            flush();
+        }
+        while ((value & ~0x7F) != 0) {
+            buffer[pos++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) value;
+    }
+
+    /**
+     * Turns chunk counting on or off. Counting costs one predictable branch
+     * per chunk while off.
+     */
+    void setCounting(boolean counting) {
+        opCounts = counting ? new long[OpIndex + 1] : null;
+    }
+
+    /**
+     * Snapshot of the chunk counts since the last {@link #reset()}; counting
+     * must be on.
+     */
+    EncodeStatistics statistics(int width, int height, long elapsedNanos) {
+        return new EncodeStatistics(width, height, opCounts[OpRun], opCounts[OpIndex], opCounts[OpDiff],
+                opCounts[OpLuma], opCounts[OpRGB], opCounts[OpRGBA], getEncodedSize(), elapsedNanos);
+    }
+
+    /**
+     * Captures the state at the current pixel for a {@link QoiIndex}. Pixels
+     * of a pending run are not written yet, so the checkpoint records how many
+     * of them the next run chunk carries.
+     */
+    QoiIndex.Checkpoint checkpoint() {
+        return new QoiIndex.Checkpoint(getEncodedSize(), prev, runLength, cache.clone());
+    }
+
+    /**
+     * Bytes produced since the last {@link #reset()}, flushed or not.
+     */
+    long getEncodedSize() {
+        return flushed + pos;
+    }
+
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    int getPosition() {
+        return pos;
+    }
+
+    void writeHeader(int width, int height, int channels, int colorSpace) {
+        buffer[pos++] = 'q';
+        buffer[pos++] = 'o';
+        buffer[pos++] = 'i';
+        buffer[pos++] = 'f';
+        writeInt(width);
+        writeInt(height);
+        buffer[pos++] = (byte) channels;
+        buffer[pos++] = (byte) colorSpace;
+    }
+
+    void encode(int[] pixels, int from, int to) throws IOException {
+        // a run chunk may be written right before the pixel's own chunk
+        int limit = buffer.length - (MaxChunkSize + 1);
+        int i = from;
+        while (i < to) {
+            if (pos > limit) {
+                flush();
+            }
+            int pixel = pixels[i];
+            if (pixel == prev) {
+                int count = PixelKernels.runLength(pixels, i, to, pixel);
+                extendRun(pixel, count);
+                i += count;
+            } else {
+                writeChunk(pixel);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Like {@link #encode(int[], int, int)} for images declared as 3-channel:
+     * alpha is taken to be 255, so it is never compared and its share of the
+     * index hash is a constant.
+     */
+    void encodeOpaque(int[] pixels, int from, int to) throws IOException {
+        int limit = buffer.length - (MaxChunkSize + 1);
+        int i = from;
+        while (i < to) {
+            if (pos > limit) {
+                flush();
+            }
+            int raw = pixels[i];
+            int pixel = raw | 0xFF;
+            if (pixel == prev) {
+                int count = PixelKernels.runLength(pixels, i, to, raw);
+                extendRun(pixel, count);
+                i += count;
+            } else {
+                writeOpaqueChunk(pixel);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Encodes {@code count} pixels of 3 bytes each, in RGB order, straight
+     * from {@code src}.
+     */
+    void encodeRGB(byte[] src, int offset, int count) throws IOException {
+        int limit = buffer.length - (MaxChunkSize + 1);
+        for (int i = offset, end = offset + count * 3; i < end; i += 3) {
+            if (pos > limit) {
+                flush();
+            }
+            int pixel = (src[i] & 0xFF) << 24 | (src[i + 1] & 0xFF) << 16 | (src[i + 2] & 0xFF) << 8 | 0xFF;
+            if (pixel == prev) {
+                extendRun(pixel, 1);
+            } else {
+                writeOpaqueChunk(pixel);
+            }
+        }
+    }
+
+    /**
+     * Encodes into the buffer until it is nearly full or {@code to} is
+     * reached, without flushing, and returns the first pixel that was not
+     * encoded. The caller drains the buffer and hands in the next one with
+     * {@link #setBuffer(byte[])}.
+     */
+    int encodePart(int[] pixels, int from, int to) throws IOException {
+        int limit = buffer.length - (MaxChunkSize + 1);
+        int i = from;
+        while (i < to && pos <= limit) {
+            int pixel = pixels[i];
+            if (pixel == prev) {
+                // every 62 pixels of a run take a byte; stop before the buffer runs out
+                int end = (int) Math.min(to, i + (long) (buffer.length - pos) * 62);
+                int count = PixelKernels.runLength(pixels, i, end, pixel);
+                extendRun(pixel, count);
+                i += count;
+            } else {
+                writeChunk(pixel);
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * {@link #encodePart(int[], int, int)} for 3-channel images, taking alpha
+     * to be 255 like {@link #encodeOpaque(int[], int, int)}.
+     */
+    int encodeOpaquePart(int[] pixels, int from, int to) throws IOException {
+        int limit = buffer.length - (MaxChunkSize + 1);
+        int i = from;
+        while (i < to && pos <= limit) {
+            int raw = pixels[i];
+            int pixel = raw | 0xFF;
+            if (pixel == prev) {
+                int end = (int) Math.min(to, i + (long) (buffer.length - pos) * 62);
+                int count = PixelKernels.runLength(pixels, i, end, raw);
+                extendRun(pixel, count);
+                i += count;
+            } else {
+                writeOpaqueChunk(pixel);
+                i++;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Encodes part of an image with the kernel {@code alpha} calls for, like
+     * {@link StandardEncoder#encodePixels}.
+     */
+    int encodePart(boolean alpha, int[] pixels, int from, int to) throws IOException {
+        return alpha ? encodePart(pixels, from, to) : encodeOpaquePart(pixels, from, to);
+    }
+
+    /**
+     * Continues in {@code buffer}, counting what was written to the previous
+     * one as output.
+     */
+    void setBuffer(byte[] buffer) {
+        flushed += pos;
+        this.buffer = buffer;
+        pos = 0;
+    }
+
+    int remaining() {
+        return buffer.length - pos;
+    }
+
+    /**
+     * Adds {@code count} repeats of the previous pixel to the run, writing a
+     * chunk for every full run of 62. As in {@link #writeChunk(int)}, the run
+     * is never left empty.
+     */
+    private void extendRun(int pixel, int count) throws IOException {
+        cache[StandardEncoder.calculateIndex(pixel)] = pixel;
+        runLength += count;
+        while (runLength > 62) {
+            if (pos == buffer.length) {
+                flush();
+            }
+            buffer[pos++] = (byte) (0b11000000 | (62 - 1));
+            runLength -= 62;
+            count(OpRun);
+        }
+    }
+
+    /**
+     * Encodes pixels that were already classified by
+     * {@link PixelKernels#classify(int[], int, int, int, int[], int)}, which leaves only
+     * the run and index cache decisions to be made here. The output is the
+     * same as {@link #encode(int[], int, int)} would produce.
+     */
+    void encodeClassified(int[] pixels, int from, int to, int[] codes, int codesOffset) throws IOException {
+        int[] cache = this.cache;
+        int limit = buffer.length - (MaxChunkSize + 1);
+        for (int i = from, c = codesOffset; i < to; i++, c++) {
+            if (pos > limit) {
+                flush();
+            }
+            int pixel = pixels[i];
+            int code = codes[c];
+            int op = code >>> 24;
+            int index = (code >>> 16) & 0b111111;
+            if (op == OpRun) {
+                if (runLength == 62) {
+                    writeRunChunk();
+                    runLength = 0;
+                }
+                runLength++;
+                cache[index] = pixel;
+                continue;
+            }
+            if (runLength > 0) {
+                writeRunChunk();
+                runLength = 0;
+            }
+            if (pixel == cache[index]) {
+                writeIndexChunk(index);
+                continue;
+            }
+            cache[index] = pixel;
+            switch (op) {
+                case OpDiff:
+                    buffer[pos++] = (byte) code;
+                    count(OpDiff);
+                    break;
+                case OpLuma:
+                    buffer[pos++] = (byte) (code >>> 8);
+                    buffer[pos++] = (byte) code;
+                    count(OpLuma);
+                    break;
+                case OpRGB:
+                    writeRGBChunk(pixel);
+                    break;
+                default:
+                    writeRGBAChunk(pixel);
+                    break;
+            }
+        }
+        if (to > from) {
+            prev = pixels[to - 1];
+        }
+    }
+
+    /**
+     * Writes the pending run and the end marker, then flushes to the stream if
+     * there is one.
+     */
+    void finish() throws IOException {
+        // without a stream the buffer has room for the worst case, which leaves no byte to spare here
+        if (out != null && buffer.length - pos < EndMarkerSize + 1) {
+            flush();
+        }
+        if (runLength > 0) {
+            writeRunChunk();
+            runLength = 0;
+        }
+        writeEndMarker();
+        if (out != null) {
+            flush();
+        }
+    }
+
+    /**
+     * Only ever reached when writing to a stream; without one the buffer is
+     * sized for the worst case.
+     */
+    void flush() throws IOException {
+        out.write(buffer, 0, pos);
+        flushed += pos;
+        pos = 0;
+    }
+
+    private void count(int op) {
+        if (opCounts != null) {
+            opCounts[op]++;
+        }
+    }
+
+    private boolean isNewRun(int next) {
+        return runLength == 0 && prev == next;
+    }
+
+    private boolean canLengthenRun(int next) {
+        return runLength > 0 && prev == next && runLength <= 61;
+    }
+
+    static int diff(int prev, int next) {
+        return (next - prev + 2) & 0xFF;
+    }
+
+    static int lumaDg(int prevG, int nextG) {
+        return (nextG - prevG + 32) & 0xFF;
+    }
+
+    static int lumaDxDg(int prevX, int nextX, int prevG, int nextG) {
+        return ((nextX - prevX) - (nextG - prevG) + 8) & 0xFF;
+    }
+
+    static boolean isSmallDiff(int diff) {
+        return diff <= 3;
+    }
+
+    static boolean isSmallLumaDiff(int dg, int drdg, int dbdg) {
+        return dg <= 63 && drdg <= 15 && dbdg <= 15;
+    }
+
+    private void writeChunk(int pixel) {
+        int index = StandardEncoder.calculateIndex(pixel);
+        if (isNewRun(pixel) || canLengthenRun(pixel)) {
+            runLength++;
+            cache[index] = pixel;
+        } else if (runLength > 0) {
+            writeRunChunk();
+            runLength = 0;
+            writeChunk(pixel);
+            return;
+        } else if (pixel == cache[index]) {
+            writeIndexChunk(index);
+        } else if ((prev & 0xFF) == (pixel & 0xFF)) {
+            int prevR = prev >>> 24;
+            int prevG = (prev >>> 16) & 0xFF;
+            int prevB = (prev >>> 8) & 0xFF;
+            int r = pixel >>> 24;
+            int g = (pixel >>> 16) & 0xFF;
+            int b = (pixel >>> 8) & 0xFF;
+            int dr = diff(prevR, r);
+            int dg = diff(prevG, g);
+            int db = diff(prevB, b);
+            int dgLuma = lumaDg(prevG, g);
+            int drdgLuma = lumaDxDg(prevR, r, prevG, g);
+            int dbdgLuma = lumaDxDg(prevB, b, prevG, g);
+            if (isSmallDiff(dr) && isSmallDiff(dg) && isSmallDiff(db)) {
+                writeDiffChunk(dr, dg, db);
+            } else if (isSmallLumaDiff(dgLuma, drdgLuma, dbdgLuma)) {
+                writeLumaChunk(dgLuma, drdgLuma, dbdgLuma);
+            } else {
+                writeRGBChunk(pixel);
+            }
+            cache[index] = pixel;
+        } else {
+            writeRGBAChunk(pixel);
+            cache[index] = pixel;
+        }
+        prev = pixel;
+    }
+
+    /**
+     * {@link #writeChunk(int)} for an opaque pixel that differs from the
+     * previous one.
+     */
+    private void writeOpaqueChunk(int pixel) {
+        if (runLength > 0) {
+            writeRunChunk();
+            runLength = 0;
+        }
+        int r = pixel >>> 24;
+        int g = (pixel >>> 16) & 0xFF;
+        int b = (pixel >>> 8) & 0xFF;
+        int index = (r * 3 + g * 5 + b * 7 + 0xFF * 11) % 64;
+        if (pixel == cache[index]) {
+            writeIndexChunk(index);
+        } else {
+            cache[index] = pixel;
+            int prevR = prev >>> 24;
+            int prevG = (prev >>> 16) & 0xFF;
+            int prevB = (prev >>> 8) & 0xFF;
+            int dr = diff(prevR, r);
+            int dg = diff(prevG, g);
+            int db = diff(prevB, b);
+            if (isSmallDiff(dr) && isSmallDiff(dg) && isSmallDiff(db)) {
+                writeDiffChunk(dr, dg, db);
+            } else {
+                int dgLuma = lumaDg(prevG, g);
+                int drdgLuma = lumaDxDg(prevR, r, prevG, g);
+                int dbdgLuma = lumaDxDg(prevB, b, prevG, g);
+                if (isSmallLumaDiff(dgLuma, drdgLuma, dbdgLuma)) {
+                    writeLumaChunk(dgLuma, drdgLuma, dbdgLuma);
+                } else {
+                    writeRGBChunk(pixel);
+                }
+            }
+        }
+        prev = pixel;
+    }
+
+    void writeHeader(Image image) {
+        writeHeader(image.getWidth(), image.getHeight(),
+                image.isAlpha() ? StandardEncoder.ChannelRGBA : StandardEncoder.ChannelRGB,
+                image.isLinear() ? StandardEncoder.ColorSpaceLinear : StandardEncoder.ColorSpaceSRGB);
+    }
+
+    private void writeRGBChunk(int pixel) {
+        byte[] buffer = this.buffer;
+        int pos = this.pos;
+        buffer[pos] = (byte) 0b11111110;
+        buffer[pos + 1] = (byte) (pixel >>> 24);
+        buffer[pos + 2] = (byte) (pixel >>> 16);
+        buffer[pos + 3] = (byte) (pixel >>> 8);
+        this.pos = pos + 4;
+        count(OpRGB);
+    }
+
+    private void writeRGBAChunk(int pixel) {
+        byte[] buffer = this.buffer;
+        int pos = this.pos;
+        buffer[pos] = (byte) 0b11111111;
+        buffer[pos + 1] = (byte) (pixel >>> 24);
+        buffer[pos + 2] = (byte) (pixel >>> 16);
+        buffer[pos + 3] = (byte) (pixel >>> 8);
+        buffer[pos + 4] = (byte) pixel;
+        this.pos = pos + 5;
+        count(OpRGBA);
+    }
+
+    private void writeIndexChunk(int index) {
+        buffer[pos++] = (byte) index;
+        count(OpIndex);
+    }
+
+    private void writeDiffChunk(int dr, int dg, int db) {
+        byte diffByte = 0b01 << 6;
+        diffByte |= dr << 4;
+        diffByte |= dg << 2;
+        diffByte |= db;
+        buffer[pos++] = diffByte;
+        count(OpDiff);
+    }
+
+    private void writeLumaChunk(int dg, int drdg, int dbdg) {
+        byte first = (byte) 0b10000000;
+        first |= dg;
+        buffer[pos++] = first;
+        byte second = (byte) 0;
+        second |= drdg << 4;
+        second |= dbdg;
+        buffer[pos++] = second;
+        count(OpLuma);
+    }
+
+    private void writeRunChunk() {
+        byte chunk = (byte) 0b11000000;
+        chunk |= runLength - 1;
+        buffer[pos++] = chunk;
+        count(OpRun);
+    }
+
+    private void writeEndMarker() {
+        for (int i = 0; i < EndMarkerSize - 1; i++) {
+            buffer[pos++] = 0;
+        }
+        buffer[pos++] = 1;
+    }
+
+    private void writeInt(int i) {
+        buffer[pos++] = (byte) (i >>> 24);
+        buffer[pos++] = (byte) (i >>> 16);
+        buffer[pos++] = (byte) (i >>> 8);
+        buffer[pos++] = (byte) i;
+    }
+
+}
@@ -0,0 +1,9 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.IOException;
+
+public interface Decoder {
+
+    Image decode() throws IOException;
+
+}
@@ -0,0 +1,11 @@
+package xyz.trevorkropp.qoi;
+
+/**
+ * Receives the statistics of every encode made by an encoder it is set on.
+ * Called on the encoding thread once the end marker has been written.
+ */
+public interface EncodeListener {
+
+    void encoded(EncodeStatistics statistics);
+
+}
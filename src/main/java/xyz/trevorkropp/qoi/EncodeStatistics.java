@@ -0,0 +1,97 @@
+package xyz.trevorkropp.qoi;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * What a single encode produced: how many chunks of each kind were written,
+ * the total size and how long it took. Byte totals per op follow from the
+ * fixed chunk sizes.
+ */
+@Getter
+@ToString
+public class EncodeStatistics {
+
+    private final int width;
+    private final int height;
+
+    private final long runChunks;
+    private final long indexChunks;
+    private final long diffChunks;
+    private final long lumaChunks;
+    private final long rgbChunks;
+    private final long rgbaChunks;
+
+    private final long encodedBytes;
+    private final long elapsedNanos;
+
+    public EncodeStatistics(int width, int height, long runChunks, long indexChunks, long diffChunks,
+            long lumaChunks, long rgbChunks, long rgbaChunks, long encodedBytes, long elapsedNanos) {
+        this.width = width;
+        this.height = height;
+        this.runChunks = runChunks;
+        this.indexChunks = indexChunks;
+        this.diffChunks = diffChunks;
+        this.lumaChunks = lumaChunks;
+        this.rgbChunks = rgbChunks;
+        this.rgbaChunks = rgbaChunks;
+        this.encodedBytes = encodedBytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getPixels() {
+        return (long) width * height;
+    }
+
+    /**
+     * Pixels covered by run chunks; every other pixel has a chunk of its own.
+     */
+    public long getRunPixels() {
+        return getPixels() - indexChunks - diffChunks - lumaChunks - rgbChunks - rgbaChunks;
+    }
+
+    public long getRunBytes() {
+        return runChunks;
+    }
+
+    public long getIndexBytes() {
+        return indexChunks;
+    }
+
+    public long getDiffBytes() {
+        return diffChunks;
+    }
+
+    public long getLumaBytes() {
+        return lumaChunks * 2;
+    }
+
+    public long getRgbBytes() {
+        return rgbChunks * 4;
+    }
+
+    public long getRgbaBytes() {
+        return rgbaChunks * 5;
+    }
+
+    public double getAverageRunLength() {
+        return runChunks == 0 ? 0 : (double) getRunPixels() / runChunks;
+    }
+
+    /**
+     * Share of the pixels outside runs that were found in the index cache.
+     */
+    public double getIndexHitRate() {
+        long lookups = getPixels() - getRunPixels();
+        return lookups == 0 ? 0 : (double) indexChunks / lookups;
+    }
+
+    public double getCompressionRatio() {
+        return encodedBytes == 0 ? 0 : getPixels() * 4.0 / encodedBytes;
+    }
+
+    public double getPixelsPerSecond() {
+        return elapsedNanos == 0 ? 0 : getPixels() * 1e9 / elapsedNanos;
+    }
+
+}
@@ -0,0 +1,140 @@
+package xyz.trevorkropp.qoi;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Sums up the statistics of many encodes, possibly from several threads at
+ * once. Can be registered as an MXBean to watch the totals over JMX.
+ */
+public class EncodeStatisticsCollector implements EncodeListener, EncodeStatisticsCollectorMXBean {
+
+    public static final String DefaultObjectName = "xyz.trevorkropp.qoi:type=EncodeStatistics";
+
+    private final LongAdder encodes = new LongAdder();
+    private final LongAdder pixels = new LongAdder();
+    private final LongAdder encodedBytes = new LongAdder();
+    private final LongAdder elapsedNanos = new LongAdder();
+    private final LongAdder runChunks = new LongAdder();
+    private final LongAdder indexChunks = new LongAdder();
+    private final LongAdder diffChunks = new LongAdder();
+    private final LongAdder lumaChunks = new LongAdder();
+    private final LongAdder rgbChunks = new LongAdder();
+    private final LongAdder rgbaChunks = new LongAdder();
+
+    @Override
+    public void encoded(EncodeStatistics statistics) {
+        encodes.increment();
+        pixels.add(statistics.getPixels());
+        encodedBytes.add(statistics.getEncodedBytes());
+        elapsedNanos.add(statistics.getElapsedNanos());
+        runChunks.add(statistics.getRunChunks());
+        indexChunks.add(statistics.getIndexChunks());
+        diffChunks.add(statistics.getDiffChunks());
+        lumaChunks.add(statistics.getLumaChunks());
+        rgbChunks.add(statistics.getRgbChunks());
+        rgbaChunks.add(statistics.getRgbaChunks());
+    }
+
+    /**
+     * Registers this collector with the platform MBean server under
+     * {@link #DefaultObjectName}.
+     */
+    public ObjectName register() throws JMException {
+        return register(new ObjectName(DefaultObjectName));
+    }
+
+    public ObjectName register(ObjectName name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        return server.registerMBean(this, name).getObjectName();
+    }
+
+    @Override
+    public long getEncodes() {
+        return encodes.sum();
+    }
+
+    @Override
+    public long getPixels() {
+        return pixels.sum();
+    }
+
+    @Override
+    public long getEncodedBytes() {
+        return encodedBytes.sum();
+    }
+
+    @Override
+    public long getElapsedNanos() {
+        return elapsedNanos.sum();
+    }
+
+    @Override
+    public long getRunChunks() {
+        return runChunks.sum();
+    }
+
+    @Override
+    public long getIndexChunks() {
+        return indexChunks.sum();
+    }
+
+    @Override
+    public long getDiffChunks() {
+        return diffChunks.sum();
+    }
+
+    @Override
+    public long getLumaChunks() {
+        return lumaChunks.sum();
+    }
+
+    @Override
+    public long getRgbChunks() {
+        return rgbChunks.sum();
+    }
+
+    @Override
+    public long getRgbaChunks() {
+        return rgbaChunks.sum();
+    }
+
+    @Override
+    public double getIndexHitRate() {
+        long index = getIndexChunks();
+        long lookups = index + getDiffChunks() + getLumaChunks() + getRgbChunks() + getRgbaChunks();
+        return lookups == 0 ? 0 : (double) index / lookups;
+    }
+
+    @Override
+    public double getAverageRunLength() {
+        long runs = getRunChunks();
+        long lookups = getIndexChunks() + getDiffChunks() + getLumaChunks() + getRgbChunks() + getRgbaChunks();
+        return runs == 0 ? 0 : (double) (getPixels() - lookups) / runs;
+    }
+
+    @Override
+    public double getPixelsPerSecond() {
+        long nanos = getElapsedNanos();
+        return nanos == 0 ? 0 : getPixels() * 1e9 / nanos;
+    }
+
+    @Override
+    public void reset() {
+        encodes.reset();
+        pixels.reset();
+        encodedBytes.reset();
+        elapsedNanos.reset();
+        runChunks.reset();
+        indexChunks.reset();
+        diffChunks.reset();
+        lumaChunks.reset();
+        rgbChunks.reset();
+        rgbaChunks.reset();
+    }
+
+}
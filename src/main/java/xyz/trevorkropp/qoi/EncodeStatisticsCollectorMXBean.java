@@ -0,0 +1,33 @@
+package xyz.trevorkropp.qoi;
+
+public interface EncodeStatisticsCollectorMXBean {
+
+    long getEncodes();
+
+    long getPixels();
+
+    long getEncodedBytes();
+
+    long getElapsedNanos();
+
+    long getRunChunks();
+
+    long getIndexChunks();
+
+    long getDiffChunks();
+
+    long getLumaChunks();
+
+    long getRgbChunks();
+
+    long getRgbaChunks();
+
+    double getIndexHitRate();
+
+    double getAverageRunLength();
+
+    double getPixelsPerSecond();
+
+    void reset();
+
+}
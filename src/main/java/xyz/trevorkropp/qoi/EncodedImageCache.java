@@ -0,0 +1,209 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.EqualsAndHashCode;
+
+/**
+ * Caches encoded images by content, so encoding the same pixels again returns
+ * the earlier output. Entries are keyed by a 128-bit hash of the pixels and
+ * the header fields and evicted least recently used first once the encoded
+ * bytes exceed the size limit. The hash is not cryptographic; do not share a
+ * cache between images from untrusted sources that could forge collisions.
+ * Safe for concurrent use; images are encoded outside the lock, so two
+ * threads missing on the same image at once both encode it.
+ */
+public class EncodedImageCache {
+
+    private final long maxBytes;
+    private final boolean offHeap;
+
+    private final LinkedHashMap<Key, ByteBuffer> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public EncodedImageCache(long maxBytes) {
+        this(maxBytes, false);
+    }
+
+    /**
+     * With {@code offHeap}, encoded bytes are kept in direct buffers so a
+     * large cache does not add to the heap the garbage collector scans.
+     */
+    public EncodedImageCache(long maxBytes, boolean offHeap) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("invalid cache size: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Returns the encoded image as a read-only buffer, without copying when
+     * it was cached.
+     */
+    public ByteBuffer encodeToBuffer(Image image) {
+        return lookup(image).asReadOnlyBuffer();
+    }
+
+    public byte[] encodeToByteArray(Image image) {
+        ByteBuffer encoded = lookup(image).duplicate();
+        byte[] copy = new byte[encoded.remaining()];
+        encoded.get(copy);
+        return copy;
+    }
+
+    public void encode(OutputStream out, Image image) throws IOException {
+        ByteBuffer encoded = lookup(image);
+        if (encoded.hasArray()) {
+            out.write(encoded.array(), encoded.arrayOffset(), encoded.remaining());
+            return;
+        }
+        ByteBuffer view = encoded.duplicate();
+        byte[] block = new byte[Math.min(view.remaining(), StandardEncoder.BlockSize)];
+        while (view.hasRemaining()) {
+            int count = Math.min(block.length, view.remaining());
+            view.get(block, 0, count);
+            out.write(block, 0, count);
+        }
+    }
+
+    private ByteBuffer lookup(Image image) {
+        Key key = Key.of(image);
+        ByteBuffer cached;
+        synchronized (this) {
+            cached = entries.get(key);
+        }
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        byte[] encoded = StandardEncoder.encodeToByteArray(image);
+        ByteBuffer stored;
+        if (offHeap) {
+            stored = ByteBuffer.allocateDirect(encoded.length);
+            stored.put(encoded);
+            stored.flip();
+        } else {
+            stored = ByteBuffer.wrap(encoded);
+        }
+        put(key, stored);
+        return stored;
+    }
+
+    private synchronized void put(Key key, ByteBuffer encoded) {
+        int size = encoded.remaining();
+        if (size > maxBytes || entries.containsKey(key)) {
+            return;
+        }
+        entries.put(key, encoded);
+        bytes += size;
+        Iterator<ByteBuffer> eldest = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= eldest.next().remaining();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @EqualsAndHashCode
+    private static final class Key {
+
+        private final long high;
+        private final long low;
+        private final int width;
+        private final int height;
+        private final boolean alpha;
+        private final boolean linear;
+
+        private Key(long high, long low, Image image) {
+            this.high = high;
+            this.low = low;
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.alpha = image.isAlpha();
+            this.linear = image.isLinear();
+        }
+
+        /**
+         * Hashes the pixels in two independent 64-bit lanes that each see
+         * every pixel, two pixels per step, then finishes both with the
+         * MurmurHash3 mixer.
+         */
+        static Key of(Image image) {
+            int[] pixels = image.getPixels();
+            int size = image.getWidth() * image.getHeight();
+            long h1 = 0x9E3779B97F4A7C15L;
+            long h2 = 0xC2B2AE3D27D4EB4FL;
+            int i = 0;
+            for (; i + 1 < size; i += 2) {
+                long v = (long) pixels[i] << 32 | (pixels[i + 1] & 0xFFFFFFFFL);
+                h1 = Long.rotateLeft(h1 ^ v * 0x87C37B91114253D5L, 31) * 0x4CF5AD432745937FL;
+                h2 = Long.rotateLeft(h2 ^ v * 0x4CF5AD432745937FL, 33) * 0x87C37B91114253D5L;
+            }
+            if (i < size) {
+                long v = pixels[i] & 0xFFFFFFFFL;
+                h1 = Long.rotateLeft(h1 ^ v * 0x87C37B91114253D5L, 31) * 0x4CF5AD432745937FL;
+                h2 = Long.rotateLeft(h2 ^ v * 0x4CF5AD432745937FL, 33) * 0x87C37B91114253D5L;
+            }
+            h1 ^= size;
+            h2 ^= size;
+            h1 += h2;
+            h2 += h1;
+            h1 = mix(h1);
+            h2 = mix(h2);
+            h1 += h2;
+            h2 += h1;
+            return new Key(h1, h2, image);
+        }
+
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            h ^= h >>> 33;
+            return h;
+        }
+
+    }
+
+}
@@ -1,10 +1,14 @@
 package xyz.trevorkropp.qoi;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import lombok.Getter;
 import lombok.Setter;
 
+/**
+ * Pixels are stored packed as {@code 0xRRGGBBAA} ints in row-major order.
+ */
 public class Image {
 
     @Getter
@@ -18,38 +22,154 @@ public class Image {
     @Setter
     private boolean alpha;
 
-    private RGBA[] data;
+    /**
+     * Whether the RGB channels are linear rather than sRGB. QOI only records
+     * this in the header; it does not change how pixels are encoded.
+     */
+    @Getter
+    @Setter
+    private boolean linear;
+
+    private int[] pixels;
+
+    static final int MaxPixels = Integer.MAX_VALUE - 8;
 
     public Image(int width, int height) {
-        this(width, height, new RGBA(0, 0, 0, 255));
+        this(width, height, 0x000000FF);
     }
 
     public Image(int width, int height, RGBA fill) {
+        this(width, height, fill.toPixel());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the pixels do not fit in an int
+     *         array; use {@link LargeImage} for such images
+     */
+    public Image(int width, int height, int fill) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("invalid dimensions: " + width + "x" + height);
+        }
+        if ((long) width * height > MaxPixels) {
+            throw new IllegalArgumentException("image is too large: " + width + "x" + height);
+        }
         this.width = width;
         this.height = height;
-        int size = width * height;
-        data = new RGBA[size];
-        Arrays.fill(data, fill);
-        if (fill.getA() != (byte) 255) {
+        pixels = new int[width * height];
+        Arrays.fill(pixels, fill);
+        if (!isOpaque(fill)) {
             setAlpha(true);
         }
     }
 
-    public void setAt(int x, int y, RGBA rgba) {
+    Image(int width, int height, boolean alpha, int[] pixels) {
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+        this.pixels = pixels;
+    }
+
+    public void setPixel(int x, int y, int pixel) {
         int index = getIndex(x, y);
-        data[index] = rgba;
-        if (rgba.getA() != (byte) 255) {
+        pixels[index] = pixel;
+        if (!isOpaque(pixel)) {
             setAlpha(true);
         }
     }
 
+    public int getPixel(int x, int y) {
+        return pixels[getIndex(x, y)];
+    }
+
+    public void setAt(int x, int y, RGBA rgba) {
+        setPixel(x, y, rgba.toPixel());
+    }
+
     public RGBA getAt(int x, int y) {
-        int index = getIndex(x, y);
-        return data[index];
+        return RGBA.fromPixel(getPixel(x, y));
+    }
+
+    /**
+     * Replaces all pixels with those of an int raster in the given layout.
+     * Row {@code y} starts at {@code src[offset + y * stride]}. The alpha flag
+     * is set from the new pixels.
+     */
+    public void setPixels(int[] src, int offset, int stride, PixelLayout layout) {
+        PixelLayout.checkRaster(src.length, offset, stride, width, height);
+        for (int y = 0; y < height; y++) {
+            layout.unpack(src, offset + y * stride, pixels, y * width, width);
+        }
+        updateAlpha(layout);
+    }
+
+    /**
+     * Replaces all pixels with those of a byte raster; {@code offset} and
+     * {@code stride} are in bytes.
+     */
+    public void setPixels(byte[] src, int offset, int stride, PixelLayout layout) {
+        PixelLayout.checkRaster(src.length, offset, stride, width * layout.getBytesPerPixel(), height);
+        for (int y = 0; y < height; y++) {
+            layout.unpack(src, offset + y * stride, pixels, y * width, width);
+        }
+        updateAlpha(layout);
+    }
+
+    /**
+     * Like {@link #setPixels(byte[], int, int, PixelLayout)} with
+     * {@code offset} an absolute index in {@code src}. The buffer's position
+     * is not used or changed.
+     */
+    public void setPixels(ByteBuffer src, int offset, int stride, PixelLayout layout) {
+        int rowBytes = width * layout.getBytesPerPixel();
+        PixelLayout.checkRaster(src.limit(), offset, stride, rowBytes, height);
+        byte[] scratch = src.hasArray() ? null : new byte[rowBytes];
+        for (int y = 0; y < height; y++) {
+            layout.unpack(src, offset + y * stride, pixels, y * width, width, scratch);
+        }
+        updateAlpha(layout);
+    }
+
+    /**
+     * Copies all pixels to an int raster in the given layout. The 3-channel
+     * layouts drop alpha.
+     */
+    public void getPixels(int[] dst, int offset, int stride, PixelLayout layout) {
+        PixelLayout.checkRaster(dst.length, offset, stride, width, height);
+        for (int y = 0; y < height; y++) {
+            layout.pack(pixels, y * width, dst, offset + y * stride, width);
+        }
+    }
+
+    public void getPixels(byte[] dst, int offset, int stride, PixelLayout layout) {
+        PixelLayout.checkRaster(dst.length, offset, stride, width * layout.getBytesPerPixel(), height);
+        for (int y = 0; y < height; y++) {
+            layout.pack(pixels, y * width, dst, offset + y * stride, width);
+        }
+    }
+
+    public void getPixels(ByteBuffer dst, int offset, int stride, PixelLayout layout) {
+        int rowBytes = width * layout.getBytesPerPixel();
+        PixelLayout.checkRaster(dst.limit(), offset, stride, rowBytes, height);
+        byte[] scratch = dst.hasArray() ? null : new byte[rowBytes];
+        for (int y = 0; y < height; y++) {
+            layout.pack(pixels, y * width, dst, offset + y * stride, width, scratch);
+        }
+    }
+
+    private void updateAlpha(PixelLayout layout) {
+        alpha = layout.hasAlpha() && !PixelLayout.RGBA.isOpaque(pixels, 0, width * height);
+    }
+
+    int[] getPixels() {
+        return pixels;
     }
 
     private int getIndex(int x, int y) {
         return x + y * width;
     }
 
+    private static boolean isOpaque(int pixel) {
+        return (pixel & 0xFF) == 0xFF;
+    }
+
 }
@@ -0,0 +1,201 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * An image stored off-heap, for sizes beyond what an {@link Image} can hold
+ * in an int array. Pixels are packed as {@code 0xRRGGBBAA} in row-major order
+ * like in {@link Image}, but indexed with longs and kept in segments of
+ * direct buffers or of a memory-mapped scratch file. Encode it with
+ * {@link StandardEncoder#encode(java.io.OutputStream, LargeImage)}.
+ */
+public class LargeImage implements AutoCloseable {
+
+    static final int SegmentShift = 26;
+    static final int SegmentPixels = 1 << SegmentShift;
+    private static final int SegmentMask = SegmentPixels - 1;
+
+    @Getter
+    private final int width;
+    @Getter
+    private final int height;
+
+    @Getter
+    @Setter
+    private boolean alpha;
+
+    @Getter
+    @Setter
+    private boolean linear;
+
+    private IntBuffer[] segments;
+    private final FileChannel channel;
+
+    /**
+     * Allocates the pixels in direct buffers, filled with opaque black.
+     */
+    public LargeImage(int width, int height) {
+        this(width, height, null);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = ByteBuffer.allocateDirect(segmentSize(i) * 4).order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+        }
+        fill(0x000000FF);
+    }
+
+    private LargeImage(int width, int height, FileChannel channel) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("invalid dimensions: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.channel = channel;
+        this.segments = new IntBuffer[(int) ((getSize() + SegmentMask) >>> SegmentShift)];
+    }
+
+    /**
+     * Keeps the pixels in a scratch file mapped into memory, so they are paged
+     * by the operating system instead of taking up RAM. The file is created,
+     * filled with opaque black, and deleted again when the image is closed.
+     */
+    public static LargeImage mapped(Path scratch, int width, int height) throws IOException {
+        FileChannel channel = FileChannel.open(scratch, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        try {
+            LargeImage image = new LargeImage(width, height, channel);
+            for (int i = 0; i < image.segments.length; i++) {
+                long position = (long) i * SegmentPixels * 4;
+                image.segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, image.segmentSize(i) * 4L)
+                        .order(ByteOrder.nativeOrder()).asIntBuffer();
+            }
+            image.fill(0x000000FF);
+            return image;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long getSize() {
+        return (long) width * height;
+    }
+
+    public void setPixel(int x, int y, int pixel) {
+        long index = getIndex(x, y);
+        segments[(int) (index >>> SegmentShift)].put((int) index & SegmentMask, pixel);
+        if (!isOpaque(pixel)) {
+            alpha = true;
+        }
+    }
+
+    public int getPixel(int x, int y) {
+        long index = getIndex(x, y);
+        return segments[(int) (index >>> SegmentShift)].get((int) index & SegmentMask);
+    }
+
+    public void setAt(int x, int y, RGBA rgba) {
+        setPixel(x, y, rgba.toPixel());
+    }
+
+    public RGBA getAt(int x, int y) {
+        return RGBA.fromPixel(getPixel(x, y));
+    }
+
+    /**
+     * Copies {@code length} pixels from {@code src} to the image, starting at
+     * pixel {@code index} in row-major order.
+     */
+    public void setPixels(long index, int[] src, int offset, int length) {
+        checkRange(index, length);
+        for (int i = offset; i < offset + length; i++) {
+            if (!isOpaque(src[i])) {
+                alpha = true;
+                break;
+            }
+        }
+        while (length > 0) {
+            IntBuffer segment = segments[(int) (index >>> SegmentShift)].duplicate();
+            segment.position((int) index & SegmentMask);
+            int count = Math.min(length, segment.remaining());
+            segment.put(src, offset, count);
+            index += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Copies {@code length} pixels starting at pixel {@code index} in
+     * row-major order to {@code dst}.
+     */
+    public void getPixels(long index, int[] dst, int offset, int length) {
+        checkRange(index, length);
+        while (length > 0) {
+            IntBuffer segment = segments[(int) (index >>> SegmentShift)].duplicate();
+            segment.position((int) index & SegmentMask);
+            int count = Math.min(length, segment.remaining());
+            segment.get(dst, offset, count);
+            index += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    public void fill(int pixel) {
+        int[] block = new int[Math.min(StandardEncoder.BlockSize, SegmentPixels)];
+        Arrays.fill(block, pixel);
+        for (IntBuffer segment : segments) {
+            IntBuffer target = segment.duplicate();
+            target.clear();
+            while (target.hasRemaining()) {
+                target.put(block, 0, Math.min(block.length, target.remaining()));
+            }
+        }
+        alpha = !isOpaque(pixel);
+    }
+
+    /**
+     * Releases the pixels; a scratch file is deleted. The memory itself is
+     * returned once the buffers are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        segments = new IntBuffer[0];
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private int segmentSize(int segment) {
+        return (int) Math.min(SegmentPixels, getSize() - ((long) segment << SegmentShift));
+    }
+
+    private long getIndex(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IndexOutOfBoundsException("pixel " + x + "," + y + " is outside the image");
+        }
+        return x + (long) y * width;
+    }
+
+    private void checkRange(long index, int length) {
+        if (index < 0 || length < 0 || index > getSize() - length) {
+            throw new IndexOutOfBoundsException("pixels " + index + " to " + (index + length)
+                    + " are outside the image");
+        }
+    }
+
+    private static boolean isOpaque(int pixel) {
+        return (pixel & 0xFF) == 0xFF;
+    }
+
+}
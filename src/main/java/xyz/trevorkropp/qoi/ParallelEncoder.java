@@ -0,0 +1,172 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Produces the same output as {@link StandardEncoder}, but classifies pixels
+ * on a fork-join pool first. The image is processed in windows: while one
+ * window is written out sequentially, which only has to resolve runs and the
+ * index cache, the next one is being classified in parallel strips. Small
+ * images and single-threaded pools use the sequential path. For images
+ * without alpha, windows are classified from a copy with alpha set to 255,
+ * so the output matches the opaque kernel whatever alpha the pixels hold.
+ */
+public class ParallelEncoder implements Encoder {
+
+    static final int WindowSize = 1 << 20;
+    static final int StripSize = 1 << 14;
+
+    private Image image;
+    private ForkJoinPool pool;
+
+    private ChunkEncoder chunks;
+    private EncodeListener listener;
+
+    private int[] codes;
+    private int[] nextCodes;
+    private int[] window;
+    private int[] nextWindow;
+
+    public ParallelEncoder(OutputStream out, Image image) {
+        this(out, image, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Chunks are collected in a block buffer and written to {@code out} only
+     * when the block fills up, so {@code out} does not need to be buffered.
+     */
+    public ParallelEncoder(OutputStream out, Image image, ForkJoinPool pool) {
+        this.image = image;
+        this.pool = pool;
+        this.chunks = new ChunkEncoder(out, new byte[StandardEncoder.BlockSize]);
+    }
+
+    public static void encode(OutputStream out, Image image) throws IOException {
+        ParallelEncoder encoder = new ParallelEncoder(out, image);
+        encoder.encode();
+    }
+
+    public static void encode(OutputStream out, Image image, ForkJoinPool pool) throws IOException {
+        ParallelEncoder encoder = new ParallelEncoder(out, image, pool);
+        encoder.encode();
+    }
+
+    public void encode() throws IOException {
+        long started = System.nanoTime();
+        chunks.reset();
+        chunks.writeHeader(image);
+        int[] pixels = image.getPixels();
+        int size = image.getWidth() * image.getHeight();
+        if (size <= WindowSize || pool.getParallelism() < 2) {
+            StandardEncoder.encodePixels(chunks, image.isAlpha(), pixels, 0, size);
+        } else {
+            encodeWindows(pixels, size);
+        }
+        chunks.finish();
+        if (listener != null) {
+            listener.encoded(chunks.statistics(image.getWidth(), image.getHeight(), System.nanoTime() - started));
+        }
+    }
+
+    /**
+     * Reports statistics for every encode from now on, or stops reporting if
+     * {@code listener} is null.
+     */
+    public void setListener(EncodeListener listener) {
+        this.listener = listener;
+        chunks.setCounting(listener != null);
+    }
+
+    private void encodeWindows(int[] pixels, int size) throws IOException {
+        boolean opaque = !image.isAlpha();
+        if (codes == null) {
+            codes = new int[WindowSize];
+            nextCodes = new int[WindowSize];
+        }
+        if (opaque && window == null) {
+            window = new int[WindowSize];
+            nextWindow = new int[WindowSize];
+        }
+        ForkJoinTask<Void> pending = pool.submit(new Classify(pixels, 0, WindowSize, codes, opaque ? window : null, 0));
+        try {
+            for (int start = 0; start < size; start += WindowSize) {
+                int end = Math.min(start + WindowSize, size);
+                pending.join();
+                pending = null;
+                int[] current = codes;
+                codes = nextCodes;
+                nextCodes = current;
+                int[] currentWindow = window;
+                window = nextWindow;
+                nextWindow = currentWindow;
+                if (end < size) {
+                    int nextEnd = Math.min(end + WindowSize, size);
+                    pending = pool.submit(new Classify(pixels, end, nextEnd, codes, opaque ? window : null, end));
+                }
+                if (opaque) {
+                    chunks.encodeClassified(currentWindow, 0, end - start, current, 0);
+                } else {
+                    chunks.encodeClassified(pixels, start, end, current, 0);
+                }
+            }
+        } finally {
+            if (pending != null) {
+                pending.quietlyJoin();
+            }
+        }
+    }
+
+    private static class Classify extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] pixels;
+        private final int from;
+        private final int to;
+        private final int[] codes;
+        private final int[] opaque;
+        private final int codesBase;
+
+        /**
+         * Classifies {@code pixels[from, to)} into {@code codes}, where
+         * {@code pixels[codesBase]} maps to {@code codes[0]}. If
+         * {@code opaque} is not null, the pixels are first copied into it at
+         * the same positions as their codes, with alpha set to 255, and
+         * classified from there.
+         */
+        Classify(int[] pixels, int from, int to, int[] codes, int[] opaque, int codesBase) {
+            this.pixels = pixels;
+            this.from = from;
+            this.to = to;
+            this.codes = codes;
+            this.opaque = opaque;
+            this.codesBase = codesBase;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= StripSize) {
+                int prev = from == 0 ? ChunkEncoder.InitialPixel : pixels[from - 1];
+                if (opaque == null) {
+                    PixelKernels.classify(pixels, from, to, prev, codes, from - codesBase);
+                    return;
+                }
+                int base = from - codesBase;
+                for (int i = from; i < to; i++) {
+                    opaque[i - codesBase] = pixels[i] | 0xFF;
+                }
+                PixelKernels.classify(opaque, base, base + to - from, prev | 0xFF, codes, base);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Classify(pixels, from, middle, codes, opaque, codesBase),
+                    new Classify(pixels, middle, to, codes, opaque, codesBase));
+        }
+
+    }
+
+}
@@ -0,0 +1,44 @@
+package xyz.trevorkropp.qoi;
+
+/**
+ * Bulk operations over packed pixels that the encoders build on. This is the
+ * Java 8 version, which always uses {@link ScalarKernels}. The multi-release
+ * JAR replaces it on Java 17 and later with one that switches to the Vector
+ * API when {@code jdk.incubator.vector} is available. Both must produce the
+ * same results.
+ */
+final class PixelKernels {
+
+    private PixelKernels() {
+    }
+
+    static boolean isVectorized() {
+        return false;
+    }
+
+    /**
+     * Counts how many pixels starting at {@code from} equal {@code value}.
+     */
+    static int runLength(int[] pixels, int from, int to, int value) {
+        return ScalarKernels.runLength(pixels, from, to, value);
+    }
+
+    /**
+     * Counts how many pixels starting at {@code from} are the same in
+     * {@code a} and {@code b}.
+     */
+    static int matchLength(int[] a, int[] b, int from, int to) {
+        return ScalarKernels.matchLength(a, b, from, to);
+    }
+
+    /**
+     * Picks the chunk each pixel would get if it were neither part of a run
+     * nor in the index cache, which only depends on the pixel before it.
+     * Codes hold the op in the top byte, the index hash below it and the diff
+     * or luma chunk bytes in the low 16 bits.
+     */
+    static void classify(int[] pixels, int from, int to, int prev, int[] codes, int codesOffset) {
+        ScalarKernels.classify(pixels, from, to, prev, codes, codesOffset);
+    }
+
+}
@@ -0,0 +1,232 @@
+package xyz.trevorkropp.qoi;
+
+import java.nio.ByteBuffer;
+
+import lombok.Getter;
+
+/**
+ * Channel order of pixels in a foreign raster. In byte rasters the channels
+ * follow each other in the order of the name. In int rasters each int holds
+ * one pixel with the first channel in the most significant byte, so
+ * {@link #ARGB} matches {@code BufferedImage.TYPE_INT_ARGB}; the 3-channel
+ * layouts leave the top byte unused, so {@link #RGB} and {@link #BGR} match
+ * {@code TYPE_INT_RGB} and {@code TYPE_INT_BGR}.
+ */
+public enum PixelLayout {
+
+    RGBA(4, 3),
+    BGRA(4, 3),
+    ARGB(4, 0),
+    RGB(3, -1),
+    BGR(3, -1);
+
+    @Getter
+    private final int bytesPerPixel;
+    private final int alphaOffset;
+
+    PixelLayout(int bytesPerPixel, int alphaOffset) {
+        this.bytesPerPixel = bytesPerPixel;
+        this.alphaOffset = alphaOffset;
+    }
+
+    public boolean hasAlpha() {
+        return alphaOffset >= 0;
+    }
+
+    /**
+     * Converts {@code count} pixels to {@code 0xRRGGBBAA}.
+     */
+    void unpack(int[] src, int offset, int[] dst, int dstOffset, int count) {
+        switch (this) {
+            case RGBA:
+                System.arraycopy(src, offset, dst, dstOffset, count);
+                break;
+            case BGRA:
+                for (int i = 0; i < count; i++) {
+                    dst[dstOffset + i] = Integer.rotateLeft(Integer.reverseBytes(src[offset + i]), 8);
+                }
+                break;
+            case ARGB:
+                for (int i = 0; i < count; i++) {
+                    dst[dstOffset + i] = Integer.rotateLeft(src[offset + i], 8);
+                }
+                break;
+            case RGB:
+                for (int i = 0; i < count; i++) {
+                    dst[dstOffset + i] = src[offset + i] << 8 | 0xFF;
+                }
+                break;
+            default:
+                for (int i = 0; i < count; i++) {
+                    dst[dstOffset + i] = Integer.reverseBytes(src[offset + i]) | 0xFF;
+                }
+                break;
+        }
+    }
+
+    void unpack(byte[] src, int offset, int[] dst, int dstOffset, int count) {
+        switch (this) {
+            case RGBA:
+                for (int i = 0, s = offset; i < count; i++, s += 4) {
+                    dst[dstOffset + i] = (src[s] & 0xFF) << 24 | (src[s + 1] & 0xFF) << 16
+                            | (src[s + 2] & 0xFF) << 8 | (src[s + 3] & 0xFF);
+                }
+                break;
+            case BGRA:
+                for (int i = 0, s = offset; i < count; i++, s += 4) {
+                    dst[dstOffset + i] = (src[s + 2] & 0xFF) << 24 | (src[s + 1] & 0xFF) << 16
+                            | (src[s] & 0xFF) << 8 | (src[s + 3] & 0xFF);
+                }
+                break;
+            case ARGB:
+                for (int i = 0, s = offset; i < count; i++, s += 4) {
+                    dst[dstOffset + i] = (src[s + 1] & 0xFF) << 24 | (src[s + 2] & 0xFF) << 16
+                            | (src[s + 3] & 0xFF) << 8 | (src[s] & 0xFF);
+                }
+                break;
+            case RGB:
+                for (int i = 0, s = offset; i < count; i++, s += 3) {
+                    dst[dstOffset + i] = (src[s] & 0xFF) << 24 | (src[s + 1] & 0xFF) << 16
+                            | (src[s + 2] & 0xFF) << 8 | 0xFF;
+                }
+                break;
+            default:
+                for (int i = 0, s = offset; i < count; i++, s += 3) {
+                    dst[dstOffset + i] = (src[s + 2] & 0xFF) << 24 | (src[s + 1] & 0xFF) << 16
+                            | (src[s] & 0xFF) << 8 | 0xFF;
+                }
+                break;
+        }
+    }
+
+    /**
+     * Reads from {@code index} of the buffer without moving its position. A
+     * buffer without an accessible array is copied through {@code scratch},
+     * which must hold {@code count} pixels.
+     */
+    void unpack(ByteBuffer src, int index, int[] dst, int dstOffset, int count, byte[] scratch) {
+        if (src.hasArray()) {
+            unpack(src.array(), src.arrayOffset() + index, dst, dstOffset, count);
+        } else {
+            ByteBuffer view = src.duplicate();
+            view.position(index);
+            view.get(scratch, 0, count * bytesPerPixel);
+            unpack(scratch, 0, dst, dstOffset, count);
+        }
+    }
+
+    /**
+     * Converts {@code count} pixels from {@code 0xRRGGBBAA}, dropping alpha
+     * for the 3-channel layouts.
+     */
+    void pack(int[] src, int srcOffset, int[] dst, int offset, int count) {
+        switch (this) {
+            case RGBA:
+                System.arraycopy(src, srcOffset, dst, offset, count);
+                break;
+            case BGRA:
+                for (int i = 0; i < count; i++) {
+                    dst[offset + i] = Integer.reverseBytes(Integer.rotateRight(src[srcOffset + i], 8));
+                }
+                break;
+            case ARGB:
+                for (int i = 0; i < count; i++) {
+                    dst[offset + i] = Integer.rotateRight(src[srcOffset + i], 8);
+                }
+                break;
+            case RGB:
+                for (int i = 0; i < count; i++) {
+                    dst[offset + i] = src[srcOffset + i] >>> 8;
+                }
+                break;
+            default:
+                for (int i = 0; i < count; i++) {
+                    dst[offset + i] = Integer.reverseBytes(src[srcOffset + i]) & 0xFFFFFF;
+                }
+                break;
+        }
+    }
+
+    void pack(int[] src, int srcOffset, byte[] dst, int offset, int count) {
+        int r = this == BGR || this == BGRA ? 2 : this == ARGB ? 1 : 0;
+        int b = this == BGR || this == BGRA ? 0 : this == ARGB ? 3 : 2;
+        int g = this == ARGB ? 2 : 1;
+        int a = alphaOffset;
+        int size = bytesPerPixel;
+        for (int i = 0, d = offset; i < count; i++, d += size) {
+            int pixel = src[srcOffset + i];
+            dst[d + r] = (byte) (pixel >>> 24);
+            dst[d + g] = (byte) (pixel >>> 16);
+            dst[d + b] = (byte) (pixel >>> 8);
+            if (a >= 0) {
+                dst[d + a] = (byte) pixel;
+            }
+        }
+    }
+
+    void pack(int[] src, int srcOffset, ByteBuffer dst, int index, int count, byte[] scratch) {
+        if (dst.hasArray()) {
+            pack(src, srcOffset, dst.array(), dst.arrayOffset() + index, count);
+        } else {
+            pack(src, srcOffset, scratch, 0, count);
+            ByteBuffer view = dst.duplicate();
+            view.position(index);
+            view.put(scratch, 0, count * bytesPerPixel);
+        }
+    }
+
+    /**
+     * Whether all of {@code count} pixels in an int raster are opaque. The
+     * alpha bytes are and-ed together in a single pass without branches.
+     */
+    boolean isOpaque(int[] src, int offset, int count) {
+        if (!hasAlpha()) {
+            return true;
+        }
+        int all = -1;
+        for (int i = offset; i < offset + count; i++) {
+            all &= src[i];
+        }
+        int alpha = this == ARGB ? all >>> 24 : all & 0xFF;
+        return alpha == 0xFF;
+    }
+
+    boolean isOpaque(byte[] src, int offset, int count) {
+        if (!hasAlpha()) {
+            return true;
+        }
+        int all = 0xFF;
+        for (int i = offset + alphaOffset, end = offset + count * 4; i < end; i += 4) {
+            all &= src[i];
+        }
+        return all == 0xFF;
+    }
+
+    boolean isOpaque(ByteBuffer src, int index, int count) {
+        if (!hasAlpha()) {
+            return true;
+        }
+        if (src.hasArray()) {
+            return isOpaque(src.array(), src.arrayOffset() + index, count);
+        }
+        int all = 0xFF;
+        for (int i = index + alphaOffset, end = index + count * 4; i < end; i += 4) {
+            all &= src.get(i);
+        }
+        return all == 0xFF;
+    }
+
+    /**
+     * Checks that a raster of {@code height} rows of {@code rowLength}
+     * elements, {@code stride} elements apart, fits in {@code length}
+     * elements from {@code offset}.
+     */
+    static void checkRaster(int length, int offset, int stride, int rowLength, int height) {
+        if (offset < 0 || stride < rowLength
+                || height > 0 && offset + (long) (height - 1) * stride + rowLength > length) {
+            throw new IndexOutOfBoundsException("raster of " + height + " rows of " + rowLength + " with stride "
+                    + stride + " does not fit from offset " + offset + " in " + length);
+        }
+    }
+
+}
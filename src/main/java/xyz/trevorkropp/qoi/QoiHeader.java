@@ -0,0 +1,131 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The 14-byte header at the start of every QOI image. The {@code read}
+ * methods read exactly the header and nothing more, so probing a file costs a
+ * single small read.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class QoiHeader {
+
+    public static final int Size = StandardEncoder.HeaderSize;
+
+    private final int width;
+    private final int height;
+    private final int channels;
+    private final int colorSpace;
+
+    public QoiHeader(int width, int height, int channels, int colorSpace) {
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.colorSpace = colorSpace;
+    }
+
+    public boolean hasAlpha() {
+        return channels == StandardEncoder.ChannelRGBA;
+    }
+
+    public boolean isLinear() {
+        return colorSpace == StandardEncoder.ColorSpaceLinear;
+    }
+
+    /**
+     * Whether {@code bytes} bytes after the header could hold this many
+     * pixels. No chunk covers more than 62 pixels per byte, so a header that
+     * fails this is corrupt and can be rejected before allocating for it.
+     */
+    public boolean fitsIn(long bytes) {
+        return (long) width * height <= bytes * 62;
+    }
+
+    public static QoiHeader read(InputStream in) throws IOException {
+        byte[] bytes = new byte[Size];
+        int count = 0;
+        while (count < Size) {
+            int read = in.read(bytes, count, Size - count);
+            if (read < 0) {
+                throw new EOFException("truncated QOI header");
+            }
+            count += read;
+        }
+        return parse(bytes, 0);
+    }
+
+    /**
+     * Reads the header at the buffer's position and advances past it.
+     */
+    public static QoiHeader read(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < Size) {
+            throw new EOFException("truncated QOI header");
+        }
+        byte[] bytes = new byte[Size];
+        buffer.get(bytes);
+        return parse(bytes, 0);
+    }
+
+    public static QoiHeader read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel);
+        }
+    }
+
+    /**
+     * Reads the header at the start of the file without moving the channel's
+     * position.
+     */
+    static QoiHeader read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Size);
+        int read = 0;
+        while (buffer.hasRemaining() && read >= 0) {
+            read = channel.read(buffer, buffer.position());
+        }
+        if (buffer.hasRemaining()) {
+            throw new EOFException("truncated QOI header");
+        }
+        return parse(buffer.array(), 0);
+    }
+
+    static QoiHeader parse(byte[] bytes, int offset) throws IOException {
+        if (bytes[offset] != 'q' || bytes[offset + 1] != 'o' || bytes[offset + 2] != 'i'
+                || bytes[offset + 3] != 'f') {
+            throw new IOException("not a QOI image: bad magic");
+        }
+        int width = readInt(bytes, offset + 4);
+        int height = readInt(bytes, offset + 8);
+        int channels = bytes[offset + 12];
+        int colorSpace = bytes[offset + 13];
+        if (width < 0 || height < 0) {
+            throw new IOException("unsupported QOI image dimensions");
+        }
+        if (channels != StandardEncoder.ChannelRGB && channels != StandardEncoder.ChannelRGBA) {
+            throw new IOException("invalid QOI channel count: " + channels);
+        }
+        if (colorSpace != StandardEncoder.ColorSpaceSRGB && colorSpace != StandardEncoder.ColorSpaceLinear) {
+            throw new IOException("invalid QOI color space: " + colorSpace);
+        }
+        return new QoiHeader(width, height, channels, colorSpace);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24
+                | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8
+                | (bytes[offset + 3] & 0xFF);
+    }
+
+}
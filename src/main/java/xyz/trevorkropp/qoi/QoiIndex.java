@@ -0,0 +1,138 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+/**
+ * A sidecar index of decoder checkpoints, one every {@code interval} rows of
+ * a QOI image. A checkpoint holds everything the decoder needs to start at the
+ * first pixel of its row: the byte offset of the next chunk, the previous
+ * pixel, the index cache, and how many pixels of the next run chunk belong to
+ * the rows above. Written by
+ * {@link StandardEncoder#encode(Path, Image, Path, int)} and used by the
+ * {@code StandardDecoder.decodeRegion} methods.
+ */
+@Getter
+public class QoiIndex {
+
+    static final int Magic = 'q' << 24 | 'o' << 16 | 'i' << 8 | 'x';
+
+    private final int width;
+    private final int height;
+    private final int interval;
+
+    @Getter(AccessLevel.NONE)
+    private final Checkpoint[] checkpoints;
+
+    QoiIndex(int width, int height, int interval, List<Checkpoint> checkpoints) {
+        this.width = width;
+        this.height = height;
+        this.interval = interval;
+        this.checkpoints = checkpoints.toArray(new Checkpoint[0]);
+    }
+
+    public int getCheckpointCount() {
+        return checkpoints.length;
+    }
+
+    /**
+     * The last checkpoint at or above {@code row}. An empty image has none,
+     * so it gets the state right after the header.
+     */
+    Checkpoint checkpointFor(int row) {
+        if (checkpoints.length == 0) {
+            return new Checkpoint(QoiHeader.Size, ChunkEncoder.InitialPixel, 0, new int[64]);
+        }
+        // the row below the image, where an empty region may start, can be past the last checkpoint
+        return checkpoints[Math.min(row / interval, checkpoints.length - 1)];
+    }
+
+    Checkpoint getCheckpoint(int i) {
+        return checkpoints[i];
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(Magic);
+        data.writeInt(width);
+        data.writeInt(height);
+        data.writeInt(interval);
+        data.writeInt(checkpoints.length);
+        for (Checkpoint checkpoint : checkpoints) {
+            data.writeLong(checkpoint.offset);
+            data.writeInt(checkpoint.prev);
+            data.writeByte(checkpoint.run);
+            for (int entry : checkpoint.cache) {
+                data.writeInt(entry);
+            }
+        }
+        data.flush();
+    }
+
+    public void write(Path path) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            write(out);
+        }
+    }
+
+    public static QoiIndex read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != Magic) {
+            throw new IOException("not a QOI index: bad magic");
+        }
+        int width = data.readInt();
+        int height = data.readInt();
+        int interval = data.readInt();
+        int count = data.readInt();
+        if (width < 0 || height < 0 || interval <= 0 || count != (height + interval - 1) / interval) {
+            throw new IOException("corrupt QOI index");
+        }
+        Checkpoint[] checkpoints = new Checkpoint[count];
+        for (int i = 0; i < count; i++) {
+            long offset = data.readLong();
+            int prev = data.readInt();
+            int run = data.readUnsignedByte();
+            int[] cache = new int[64];
+            for (int j = 0; j < cache.length; j++) {
+                cache[j] = data.readInt();
+            }
+            checkpoints[i] = new Checkpoint(offset, prev, run, cache);
+        }
+        return new QoiIndex(width, height, interval, Arrays.asList(checkpoints));
+    }
+
+    public static QoiIndex read(Path path) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            return read(in);
+        }
+    }
+
+    static final class Checkpoint {
+
+        final long offset;
+        final int prev;
+        final int run;
+        final int[] cache;
+
+        Checkpoint(long offset, int prev, int run, int[] cache) {
+            this.offset = offset;
+            this.prev = prev;
+            this.run = run;
+            this.cache = cache;
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the QOI image inside a "qoi.z" container written by
+ * {@link QoizOutputStream}, inflating one block at a time.
+ */
+public class QoizInputStream extends InputStream {
+
+    private final DataInputStream in;
+    private final Inflater inflater = new Inflater(true);
+
+    private final int level;
+    private final byte[] block;
+    private byte[] compressed;
+    private int pos;
+    private int limit;
+    private boolean ended;
+
+    public QoizInputStream(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        if (this.in.readInt() != QoizOutputStream.Magic) {
+            throw new IOException("not a qoi.z container: bad magic");
+        }
+        int version = this.in.readUnsignedByte();
+        if (version != QoizOutputStream.Version) {
+            throw new IOException("unsupported qoi.z version: " + version);
+        }
+        this.level = this.in.readUnsignedByte();
+        int blockSize = this.in.readInt();
+        if (blockSize <= 0 || blockSize > QoizOutputStream.MaxBlockSize) {
+            throw new IOException("invalid qoi.z block size: " + blockSize);
+        }
+        this.block = new byte[blockSize];
+        this.compressed = new byte[Math.min(blockSize, StandardEncoder.BlockSize)];
+    }
+
+    public static Image decode(InputStream in) throws IOException {
+        try (QoizInputStream qoiz = new QoizInputStream(in)) {
+            return StandardDecoder.decode(qoiz);
+        }
+    }
+
+    /**
+     * The Deflate level the container was written with.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == limit && !nextBlock()) {
+            return -1;
+        }
+        return block[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (pos == limit && !nextBlock()) {
+            return -1;
+        }
+        int n = Math.min(len, limit - pos);
+        System.arraycopy(block, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return limit - pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (ended) {
+            return false;
+        }
+        int compressedSize = in.readInt();
+        if (compressedSize == 0) {
+            ended = true;
+            return false;
+        }
+        int size = in.readInt();
+        if (size <= 0 || size > block.length || compressedSize < 0
+                || compressedSize > QoizOutputStream.maxCompressedSize(size)) {
+            throw new IOException("corrupt qoi.z block");
+        }
+        if (compressed.length < compressedSize) {
+            compressed = new byte[compressedSize];
+        }
+        in.readFully(compressed, 0, compressedSize);
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedSize);
+        int inflated = 0;
+        try {
+            while (inflated < size && !inflater.finished()) {
+                int n = inflater.inflate(block, inflated, size - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("truncated qoi.z block");
+                }
+                inflated += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt qoi.z block", e);
+        }
+        if (inflated != size) {
+            throw new IOException("corrupt qoi.z block");
+        }
+        pos = 0;
+        limit = size;
+        return true;
+    }
+
+}
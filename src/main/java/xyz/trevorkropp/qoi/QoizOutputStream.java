@@ -0,0 +1,167 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the "qoi.z" container: a QOI image compressed with Deflate. Bytes
+ * written to this stream, normally by an encoder, are collected into blocks
+ * that are compressed independently, so memory stays bounded and blocks could
+ * be inflated in parallel. The layout is
+ *
+ * <pre>
+ * "qoiz" version:u8 level:u8 blockSize:u32
+ * ( compressedSize:u32 size:u32 deflate-data )*  0:u32
+ * </pre>
+ *
+ * with sizes big-endian and raw Deflate data without zlib headers. Read it
+ * back with {@link QoizInputStream}.
+ */
+public class QoizOutputStream extends OutputStream {
+
+    static final int Magic = 'q' << 24 | 'o' << 16 | 'i' << 8 | 'z';
+    static final int Version = 1;
+    static final int HeaderSize = 10;
+
+    public static final int DefaultBlockSize = 1024 * 1024;
+    // readers allocate a block of this size up front, so a corrupt header must not ask for more
+    public static final int MaxBlockSize = 64 * 1024 * 1024;
+
+    private final OutputStream out;
+    private final Deflater deflater;
+
+    private final byte[] block;
+    private int count;
+    private byte[] compressed;
+    private boolean finished;
+
+    public QoizOutputStream(OutputStream out) throws IOException {
+        this(out, Deflater.BEST_SPEED, DefaultBlockSize);
+    }
+
+    /**
+     * @param level a {@link Deflater} level from 0 to 9
+     * @param blockSize uncompressed bytes per block, at most
+     *        {@link #MaxBlockSize}
+     */
+    public QoizOutputStream(OutputStream out, int level, int blockSize) throws IOException {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("invalid deflate level: " + level);
+        }
+        if (blockSize <= 0 || blockSize > MaxBlockSize) {
+            throw new IllegalArgumentException("invalid block size: " + blockSize);
+        }
+        this.out = out;
+        this.deflater = new Deflater(level, true);
+        this.block = new byte[blockSize];
+        this.compressed = new byte[8 + maxCompressedSize(blockSize)];
+        byte[] header = new byte[HeaderSize];
+        writeInt(header, 0, Magic);
+        header[4] = Version;
+        header[5] = (byte) level;
+        writeInt(header, 6, blockSize);
+        out.write(header);
+    }
+
+    public static void encode(OutputStream out, Image image, int level) throws IOException {
+        QoizOutputStream qoiz = new QoizOutputStream(out, level, DefaultBlockSize);
+        StandardEncoder.encode(qoiz, image);
+        qoiz.finish();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == block.length || finished) {
+            writeBlock();
+        }
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (count == block.length) {
+                writeBlock();
+            }
+            int n = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes the last block and the terminator without closing the
+     * underlying stream.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (count > 0) {
+            writeBlock();
+        }
+        byte[] end = new byte[4];
+        out.write(end);
+        finished = true;
+        deflater.end();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        ensureOpen();
+        deflater.reset();
+        deflater.setInput(block, 0, count);
+        deflater.finish();
+        int size = 8;
+        while (!deflater.finished()) {
+            if (size == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            size += deflater.deflate(compressed, size, compressed.length - size);
+        }
+        writeInt(compressed, 0, size - 8);
+        writeInt(compressed, 4, count);
+        out.write(compressed, 0, size);
+        count = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("qoi.z stream is finished");
+        }
+    }
+
+    /**
+     * The most raw Deflate can take for {@code size} bytes at any level,
+     * stored blocks included: zlib's conservative {@code deflateBound}.
+     */
+    static int maxCompressedSize(int size) {
+        return size + ((size + 7) >> 3) + ((size + 63) >> 6) + 5;
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+}
@@ -19,4 +19,18 @@ public class RGBA {
         this((byte) r, (byte) g, (byte) b, (byte) a);
     }
 
+    /**
+     * Unpacks a pixel stored as {@code 0xRRGGBBAA}.
+     */
+    public static RGBA fromPixel(int pixel) {
+        return new RGBA(pixel >>> 24, pixel >>> 16, pixel >>> 8, pixel);
+    }
+
+    /**
+     * Packs this color as {@code 0xRRGGBBAA}, the layout used by {@link Image}.
+     */
+    public int toPixel() {
+        return (r & 0xFF) << 24 | (g & 0xFF) << 16 | (b & 0xFF) << 8 | (a & 0xFF);
+    }
+
 }
@@ -0,0 +1,74 @@
+package xyz.trevorkropp.qoi;
+
+import static xyz.trevorkropp.qoi.ChunkEncoder.OpDiff;
+import static xyz.trevorkropp.qoi.ChunkEncoder.OpLuma;
+import static xyz.trevorkropp.qoi.ChunkEncoder.OpRGB;
+import static xyz.trevorkropp.qoi.ChunkEncoder.OpRGBA;
+import static xyz.trevorkropp.qoi.ChunkEncoder.OpRun;
+import static xyz.trevorkropp.qoi.ChunkEncoder.diff;
+import static xyz.trevorkropp.qoi.ChunkEncoder.isSmallDiff;
+import static xyz.trevorkropp.qoi.ChunkEncoder.isSmallLumaDiff;
+import static xyz.trevorkropp.qoi.ChunkEncoder.lumaDg;
+import static xyz.trevorkropp.qoi.ChunkEncoder.lumaDxDg;
+import static xyz.trevorkropp.qoi.StandardEncoder.calculateIndex;
+
+/**
+ * One pixel at a time versions of the {@link PixelKernels}, used on every
+ * runtime and as the reference for the vectorized ones.
+ */
+final class ScalarKernels {
+
+    private ScalarKernels() {
+    }
+
+    static int runLength(int[] pixels, int from, int to, int value) {
+        int i = from;
+        while (i < to && pixels[i] == value) {
+            i++;
+        }
+        return i - from;
+    }
+
+    static int matchLength(int[] a, int[] b, int from, int to) {
+        int i = from;
+        while (i < to && a[i] == b[i]) {
+            i++;
+        }
+        return i - from;
+    }
+
+    static void classify(int[] pixels, int from, int to, int prev, int[] codes, int codesOffset) {
+        for (int i = from, c = codesOffset; i < to; i++, c++) {
+            int pixel = pixels[i];
+            int code = calculateIndex(pixel) << 16;
+            if (pixel == prev) {
+                code |= OpRun << 24;
+            } else if ((prev & 0xFF) == (pixel & 0xFF)) {
+                int prevR = prev >>> 24;
+                int prevG = (prev >>> 16) & 0xFF;
+                int prevB = (prev >>> 8) & 0xFF;
+                int r = pixel >>> 24;
+                int g = (pixel >>> 16) & 0xFF;
+                int b = (pixel >>> 8) & 0xFF;
+                int dr = diff(prevR, r);
+                int dg = diff(prevG, g);
+                int db = diff(prevB, b);
+                int dgLuma = lumaDg(prevG, g);
+                int drdgLuma = lumaDxDg(prevR, r, prevG, g);
+                int dbdgLuma = lumaDxDg(prevB, b, prevG, g);
+                if (isSmallDiff(dr) && isSmallDiff(dg) && isSmallDiff(db)) {
+                    code |= OpDiff << 24 | 0b01 << 6 | dr << 4 | dg << 2 | db;
+                } else if (isSmallLumaDiff(dgLuma, drdgLuma, dbdgLuma)) {
+                    code |= OpLuma << 24 | (0b10000000 | dgLuma) << 8 | drdgLuma << 4 | dbdgLuma;
+                } else {
+                    code |= OpRGB << 24;
+                }
+            } else {
+                code |= OpRGBA << 24;
+            }
+            codes[c] = code;
+            prev = pixel;
+        }
+    }
+
+}
@@ -0,0 +1,236 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import lombok.Getter;
+
+/**
+ * Reads a frame sequence written by {@link SequenceEncoder}. Frames can be
+ * read in order with {@link #nextFrame()}, or in any order with
+ * {@link #readFrame(int)}, which decodes forward from the nearest key frame
+ * unless the frame follows the one read last.
+ */
+public class SequenceDecoder implements Closeable {
+
+    private final ByteBuffer data;
+    private final FileChannel channel;
+
+    @Getter
+    private final int width;
+    @Getter
+    private final int height;
+    @Getter
+    private final boolean alpha;
+    @Getter
+    private final boolean linear;
+    @Getter
+    private final int frameCount;
+
+    private final long[] offsets;
+    private final boolean[] keyFrames;
+
+    private final int[] frame;
+    private StandardDecoder chunks;
+    private int next;
+
+    /**
+     * Reads the sequence that fills the remaining bytes of {@code data},
+     * which may be a mapped file. The position of {@code data} is not
+     * changed.
+     */
+    public SequenceDecoder(ByteBuffer data) throws IOException {
+        this(data.slice(), null, data.remaining());
+    }
+
+    /**
+     * Opens a sequence file, reading frames through a channel so files of
+     * any size work. Close the decoder to close the file.
+     */
+    public static SequenceDecoder open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new SequenceDecoder(null, channel, channel.size());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private SequenceDecoder(ByteBuffer data, FileChannel channel, long size) throws IOException {
+        this.data = data;
+        this.channel = channel;
+        if (size < SequenceEncoder.HeaderSize + 1 + 4 + SequenceEncoder.TrailerSize) {
+            throw new EOFException("truncated QOI sequence");
+        }
+        ByteBuffer header = read(0, SequenceEncoder.HeaderSize);
+        if (header.getInt() != SequenceEncoder.Magic) {
+            throw new IOException("not a QOI sequence: bad magic");
+        }
+        int version = header.get() & 0xFF;
+        if (version != SequenceEncoder.Version) {
+            throw new IOException("unsupported QOI sequence version: " + version);
+        }
+        this.width = header.getInt();
+        this.height = header.getInt();
+        int channels = header.get();
+        int colorSpace = header.get();
+        if (width < 0 || height < 0 || (long) width * height > Image.MaxPixels) {
+            throw new IOException("unsupported QOI sequence dimensions: " + width + "x" + height);
+        }
+        if (channels != StandardEncoder.ChannelRGB && channels != StandardEncoder.ChannelRGBA) {
+            throw new IOException("invalid QOI channel count: " + channels);
+        }
+        this.alpha = channels == StandardEncoder.ChannelRGBA;
+        this.linear = colorSpace == StandardEncoder.ColorSpaceLinear;
+
+        ByteBuffer trailer = read(size - SequenceEncoder.TrailerSize, SequenceEncoder.TrailerSize);
+        long indexOffset = trailer.getLong();
+        if (trailer.getInt() != SequenceEncoder.Magic || indexOffset < SequenceEncoder.HeaderSize
+                || indexOffset > size - SequenceEncoder.TrailerSize - 5) {
+            throw new IOException("QOI sequence has no frame index");
+        }
+        ByteBuffer count = read(indexOffset, 5);
+        if (count.get() != SequenceEncoder.EndOfFrames) {
+            throw new IOException("QOI sequence has no frame index");
+        }
+        this.frameCount = count.getInt();
+        if (frameCount < 0 || (long) frameCount * 9 != size - SequenceEncoder.TrailerSize - 5 - indexOffset) {
+            throw new IOException("corrupt QOI sequence frame index");
+        }
+        this.offsets = new long[frameCount];
+        this.keyFrames = new boolean[frameCount];
+        ByteBuffer index = read(indexOffset + 5, frameCount * 9);
+        for (int i = 0; i < frameCount; i++) {
+            offsets[i] = index.getLong();
+            keyFrames[i] = index.get() == SequenceEncoder.KeyFrame;
+            if (offsets[i] < SequenceEncoder.HeaderSize || offsets[i] >= indexOffset
+                    || i > 0 && offsets[i] <= offsets[i - 1]) {
+                throw new IOException("corrupt QOI sequence frame index");
+            }
+        }
+        if (frameCount > 0 && !keyFrames[0]) {
+            throw new IOException("QOI sequence does not start with a key frame");
+        }
+        this.frame = new int[width * height];
+    }
+
+    public boolean isKeyFrame(int index) {
+        checkFrame(index);
+        return keyFrames[index];
+    }
+
+    /**
+     * The frame after the one read last, or null after the last frame.
+     */
+    public Image nextFrame() throws IOException {
+        return next < frameCount ? readFrame(next) : null;
+    }
+
+    public Image readFrame(int index) throws IOException {
+        checkFrame(index);
+        int keyFrame = index;
+        while (!keyFrames[keyFrame]) {
+            keyFrame--;
+        }
+        if (chunks == null || index < next - 1 || keyFrame > next) {
+            seek(keyFrame);
+        }
+        try {
+            while (next <= index) {
+                readFrameData(next++);
+            }
+        } catch (IOException e) {
+            chunks = null;
+            throw e;
+        }
+        Image image = new Image(width, height, alpha, frame.clone());
+        image.setLinear(linear);
+        return image;
+    }
+
+    private void checkFrame(int index) {
+        if (index < 0 || index >= frameCount) {
+            throw new IndexOutOfBoundsException("frame " + index + " of " + frameCount);
+        }
+    }
+
+    private void seek(int keyFrame) throws IOException {
+        long offset = offsets[keyFrame];
+        if (channel != null) {
+            channel.position(offset);
+            chunks = new StandardDecoder(Channels.newInputStream(channel));
+        } else {
+            ByteBuffer frames = data.duplicate();
+            frames.position((int) offset);
+            chunks = new StandardDecoder(frames);
+        }
+        chunks.start();
+        next = keyFrame;
+    }
+
+    private void readFrameData(int index) throws IOException {
+        int type = chunks.readByte();
+        if (type != (keyFrames[index] ? SequenceEncoder.KeyFrame : SequenceEncoder.DeltaFrame)) {
+            throw new IOException("QOI sequence frame index does not match the frames");
+        }
+        if (type == SequenceEncoder.KeyFrame) {
+            chunks.resetState();
+            chunks.readPixels(frame, 0, frame.length);
+            return;
+        }
+        int top = chunks.readVarInt();
+        int bottom = chunks.readVarInt();
+        if (top > bottom || bottom > height) {
+            throw new IOException("corrupt QOI sequence frame " + index);
+        }
+        int i = top * width;
+        int end = bottom * width;
+        while (i < end) {
+            int skip = chunks.readVarInt();
+            int count = chunks.readVarInt();
+            if (skip > end - i || count > end - i - skip) {
+                throw new IOException("corrupt QOI sequence frame " + index);
+            }
+            i += skip;
+            if (count > 0) {
+                int before = i == 0 ? ChunkEncoder.InitialPixel : frame[i - 1];
+                chunks.setPrevious(alpha ? before : before | 0xFF);
+                chunks.readPixels(frame, i, i + count);
+                i += count;
+            } else if (skip == 0) {
+                throw new IOException("corrupt QOI sequence frame " + index);
+            }
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        if (channel == null) {
+            ByteBuffer view = data.duplicate();
+            view.position((int) position).limit((int) position + length);
+            return view.slice();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("truncated QOI sequence");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,245 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import lombok.Getter;
+
+/**
+ * Encodes a sequence of frames of the same size, such as screen captures,
+ * into one stream. Every {@code keyFrameInterval}th frame is a key frame
+ * encoded like a standalone QOI image. The frames in between only encode what
+ * changed since the previous frame: rows above and below the changes are
+ * skipped as a whole, and within the changed rows, stretches of unchanged
+ * pixels are skipped and the rest is encoded with QOI chunks. An index of
+ * frame offsets at the end lets {@link SequenceDecoder} seek. The layout is
+ *
+ * <pre>
+ * "qois" version:u8 width:u32 height:u32 channels:u8 colorSpace:u8
+ * ( 0 chunks
+ * | 1 top:var bottom:var ( skip:var count:var chunks )* )*
+ * 2 frames:u32 ( offset:u64 type:u8 )* indexOffset:u64 "qois"
+ * </pre>
+ *
+ * with numbers big-endian except the {@code var} ones, which are unsigned
+ * LEB128. The index cache carries over from one frame to the next until the
+ * next key frame; the previous pixel at the start of each changed stretch is
+ * the pixel before it in the frame.
+ */
+public class SequenceEncoder implements Closeable {
+
+    static final int Magic = 'q' << 24 | 'o' << 16 | 'i' << 8 | 's';
+    static final int Version = 1;
+    static final int HeaderSize = 15;
+    static final int TrailerSize = 12;
+
+    static final int KeyFrame = 0;
+    static final int DeltaFrame = 1;
+    static final int EndOfFrames = 2;
+
+    // skipping costs two numbers and restarts the chunk context; shorter stretches are cheaper to encode
+    static final int MinSkip = 8;
+
+    public static final int DefaultKeyFrameInterval = 60;
+
+    private final OutputStream out;
+    @Getter
+    private final int width;
+    @Getter
+    private final int height;
+    @Getter
+    private final boolean alpha;
+
+    private final ChunkEncoder chunks;
+    private final int[] previous;
+
+    @Getter
+    private int keyFrameInterval = DefaultKeyFrameInterval;
+    private int sinceKeyFrame;
+
+    @Getter
+    private int frameCount;
+    private long[] offsets = new long[64];
+    private byte[] types = new byte[64];
+    private boolean finished;
+
+    public SequenceEncoder(OutputStream out, int width, int height, boolean alpha) throws IOException {
+        this(out, width, height, alpha, false);
+    }
+
+    /**
+     * The header is written right away; {@code out} does not need to be
+     * buffered.
+     */
+    public SequenceEncoder(OutputStream out, int width, int height, boolean alpha, boolean linear)
+            throws IOException {
+        if (width < 0 || height < 0 || (long) width * height > Image.MaxPixels) {
+            throw new IllegalArgumentException("invalid frame size: " + width + "x" + height);
+        }
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+        this.chunks = new ChunkEncoder(out, new byte[StandardEncoder.BlockSize]);
+        this.previous = new int[width * height];
+        byte[] header = new byte[HeaderSize];
+        writeInt(header, 0, Magic);
+        header[4] = Version;
+        writeInt(header, 5, width);
+        writeInt(header, 9, height);
+        header[13] = (byte) (alpha ? StandardEncoder.ChannelRGBA : StandardEncoder.ChannelRGB);
+        header[14] = (byte) (linear ? StandardEncoder.ColorSpaceLinear : StandardEncoder.ColorSpaceSRGB);
+        out.write(header);
+    }
+
+    /**
+     * Frames between key frames; 1 makes every frame a key frame. Takes
+     * effect from the next frame.
+     */
+    public void setKeyFrameInterval(int keyFrameInterval) {
+        if (keyFrameInterval < 1) {
+            throw new IllegalArgumentException("invalid key frame interval: " + keyFrameInterval);
+        }
+        this.keyFrameInterval = keyFrameInterval;
+    }
+
+    public void writeFrame(Image frame) throws IOException {
+        if (frame.getWidth() != width || frame.getHeight() != height) {
+            throw new IllegalArgumentException("frame is " + frame.getWidth() + "x" + frame.getHeight()
+                    + ", expected " + width + "x" + height);
+        }
+        writeFrame(frame.getPixels());
+    }
+
+    /**
+     * Encodes a frame of {@code 0xRRGGBBAA} pixels in row-major order.
+     */
+    public void writeFrame(int[] pixels) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("sequence is finished");
+        }
+        int size = previous.length;
+        if (pixels.length < size) {
+            throw new IllegalArgumentException("frame has " + pixels.length + " pixels, expected " + size);
+        }
+        if (frameCount == offsets.length) {
+            offsets = Arrays.copyOf(offsets, frameCount * 2);
+            types = Arrays.copyOf(types, frameCount * 2);
+        }
+        offsets[frameCount] = HeaderSize + chunks.getEncodedSize();
+        if (frameCount == 0 || sinceKeyFrame + 1 >= keyFrameInterval) {
+            types[frameCount] = KeyFrame;
+            chunks.writeByte(KeyFrame);
+            chunks.resetState();
+            StandardEncoder.encodePixels(chunks, alpha, pixels, 0, size);
+            chunks.endRun();
+            System.arraycopy(pixels, 0, previous, 0, size);
+            sinceKeyFrame = 0;
+        } else {
+            types[frameCount] = DeltaFrame;
+            writeDelta(pixels, size);
+            sinceKeyFrame++;
+        }
+        frameCount++;
+    }
+
+    /**
+     * Encodes the changes since the previous frame and copies the changed
+     * rows into it.
+     */
+    private void writeDelta(int[] pixels, int size) throws IOException {
+        int[] previous = this.previous;
+        chunks.writeByte(DeltaFrame);
+        int first = PixelKernels.matchLength(pixels, previous, 0, size);
+        if (first == size) {
+            chunks.writeVarInt(0);
+            chunks.writeVarInt(0);
+            return;
+        }
+        int top = first / width;
+        int bottom = height;
+        while (PixelKernels.matchLength(pixels, previous, (bottom - 1) * width, bottom * width) == width) {
+            bottom--;
+        }
+        chunks.writeVarInt(top);
+        chunks.writeVarInt(bottom);
+        int i = top * width;
+        int end = bottom * width;
+        while (i < end) {
+            int skipped = i;
+            i += PixelKernels.matchLength(pixels, previous, i, end);
+            int changed = i;
+            while (i < end) {
+                if (pixels[i] != previous[i]) {
+                    i++;
+                    continue;
+                }
+                int same = PixelKernels.matchLength(pixels, previous, i, Math.min(end, i + MinSkip));
+                if (same == MinSkip || i + same == end) {
+                    break;
+                }
+                i += same;
+            }
+            chunks.writeVarInt(changed - skipped);
+            chunks.writeVarInt(i - changed);
+            if (i > changed) {
+                int before = changed == 0 ? ChunkEncoder.InitialPixel : pixels[changed - 1];
+                chunks.setPrevious(alpha ? before : before | 0xFF);
+                StandardEncoder.encodePixels(chunks, alpha, pixels, changed, i);
+                chunks.endRun();
+            }
+        }
+        System.arraycopy(pixels, top * width, previous, top * width, end - top * width);
+    }
+
+    /**
+     * Bytes written so far, header included.
+     */
+    public long getEncodedSize() {
+        return HeaderSize + chunks.getEncodedSize();
+    }
+
+    /**
+     * Writes the frame index without closing the underlying stream. No frames
+     * can be added afterwards.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        long indexOffset = getEncodedSize();
+        chunks.writeByte(EndOfFrames);
+        chunks.flush();
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, StandardEncoder.BlockSize));
+        data.writeInt(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            data.writeLong(offsets[i]);
+            data.writeByte(types[i]);
+        }
+        data.writeLong(indexOffset);
+        data.writeInt(Magic);
+        data.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+}
@@ -0,0 +1,58 @@
+package xyz.trevorkropp.qoi;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Encoded size predicted from a sample of rows by
+ * {@link StandardEncoder#estimateEncodedSize(Image, double)}. The error bound
+ * covers about 95% of images; the worst case is exact.
+ */
+@ToString
+public class SizeEstimate {
+
+    @Getter
+    private final long estimatedSize;
+    @Getter
+    private final long errorBound;
+    @Getter
+    private final long worstCaseSize;
+    @Getter
+    private final long rawSize;
+    @Getter
+    private final int sampledRows;
+    private final boolean exact;
+
+    SizeEstimate(long estimatedSize, long errorBound, long worstCaseSize, long rawSize, int sampledRows,
+            boolean exact) {
+        this.estimatedSize = estimatedSize;
+        this.errorBound = errorBound;
+        this.worstCaseSize = worstCaseSize;
+        this.rawSize = rawSize;
+        this.sampledRows = sampledRows;
+        this.exact = exact;
+    }
+
+    /**
+     * A buffer of this size holds the output unless the image is unusually
+     * uneven; it never exceeds the worst case.
+     */
+    public long getUpperBound() {
+        return Math.min(estimatedSize + errorBound, worstCaseSize);
+    }
+
+    /**
+     * Whether every row was encoded, so the estimate is the actual size.
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Raw pixel bytes, at the image's channel count, per encoded byte.
+     */
+    public double getCompressionRatio() {
+        return estimatedSize == 0 ? 0 : (double) rawSize / estimatedSize;
+    }
+
+}
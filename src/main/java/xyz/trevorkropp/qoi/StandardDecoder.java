@@ -0,0 +1,602 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class StandardDecoder implements Decoder {
+
+    private InputStream in;
+    private ByteBuffer source;
+
+    private final int[] cache = new int[64];
+    private int pixel;
+    private int run;
+
+    private byte[] buffer;
+    private int pos;
+    private int limit;
+
+    private static final int BlockSize = StandardEncoder.BlockSize;
+
+    /**
+     * The stream is read in large blocks, so it does not need to be buffered.
+     * Bytes past the end marker may be consumed.
+     */
+    public StandardDecoder(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Decodes the remaining bytes of {@code source}, which may be a
+     * {@link MappedByteBuffer}. The source position is advanced past the
+     * bytes read.
+     */
+    public StandardDecoder(ByteBuffer source) {
+        this.source = source;
+    }
+
+    private StandardDecoder(byte[] data) {
+        this.buffer = data;
+        this.limit = data.length;
+    }
+
+    public static Image decode(InputStream in) throws IOException {
+        StandardDecoder decoder = new StandardDecoder(in);
+        return decoder.decode();
+    }
+
+    public static Image decode(byte[] data) throws IOException {
+        StandardDecoder decoder = new StandardDecoder(data);
+        return decoder.decode();
+    }
+
+    public static Image decode(ByteBuffer source) throws IOException {
+        StandardDecoder decoder = new StandardDecoder(source);
+        return decoder.decode();
+    }
+
+    /**
+     * Decodes a file by mapping it into memory. The mapping is limited to the
+     * largest size the header dimensions allow.
+     */
+    public static Image decode(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return forFile(channel).decode();
+        }
+    }
+
+    /**
+     * Decodes a thumbnail of a file; see
+     * {@link #decodeThumbnail(int, int, ThumbnailFilter)}.
+     */
+    public static Image decodeThumbnail(Path path, int width, int height, ThumbnailFilter filter)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return forFile(channel).decodeThumbnail(width, height, filter);
+        }
+    }
+
+    private static StandardDecoder forFile(FileChannel channel) throws IOException {
+        QoiHeader header = QoiHeader.read(channel);
+        long size = Math.min(channel.size(), StandardEncoder.maxEncodedSize(header.getWidth(), header.getHeight()));
+        if (size > Integer.MAX_VALUE) {
+            return new StandardDecoder(Channels.newInputStream(channel));
+        }
+        return new StandardDecoder(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+    }
+
+    public Image decode() throws IOException {
+        return decodeInto(null);
+    }
+
+    /**
+     * Decodes into {@code pixels} when it can hold the whole image, so the
+     * caller can supply the backing array, for example a raster's. Pixels are
+     * packed as {@code 0xRRGGBBAA}. The returned image is backed by
+     * {@code pixels}, or by a new array if {@code pixels} is null or too small.
+     */
+    public Image decodeInto(int[] pixels) throws IOException {
+        start();
+        Image image = readHeader(pixels);
+        readChunks(image.getPixels(), 0, image.getWidth() * image.getHeight());
+        skipEndMarker();
+        if (source != null) {
+            consumeSource();
+        }
+        return image;
+    }
+
+    /**
+     * Decodes the image scaled down to {@code width} by {@code height}
+     * pixels, which must not exceed the image's size. Rows are decoded one at
+     * a time and folded into the thumbnail, so besides the thumbnail only one
+     * source row is held in memory.
+     */
+    public Image decodeThumbnail(int width, int height, ThumbnailFilter filter) throws IOException {
+        start();
+        QoiHeader header = readQoiHeader();
+        return readThumbnail(header, width, height, filter);
+    }
+
+    /**
+     * Decodes the image scaled down by {@code divisor} in both directions,
+     * rounding the thumbnail size up.
+     */
+    public Image decodeScaled(int divisor, ThumbnailFilter filter) throws IOException {
+        if (divisor < 1) {
+            throw new IllegalArgumentException("invalid divisor: " + divisor);
+        }
+        start();
+        QoiHeader header = readQoiHeader();
+        int width = (int) (((long) header.getWidth() + divisor - 1) / divisor);
+        int height = (int) (((long) header.getHeight() + divisor - 1) / divisor);
+        return readThumbnail(header, width, height, filter);
+    }
+
+    private Image readThumbnail(QoiHeader header, int width, int height, ThumbnailFilter filter)
+            throws IOException {
+        int sourceWidth = header.getWidth();
+        int sourceHeight = header.getHeight();
+        if (width < 0 || height < 0 || width > sourceWidth || height > sourceHeight
+                || (width == 0 || height == 0) != (sourceWidth == 0 || sourceHeight == 0)) {
+            throw new IllegalArgumentException("cannot scale " + sourceWidth + "x" + sourceHeight + " to " + width
+                    + "x" + height);
+        }
+        int[] pixels = new int[width * height];
+        int[] row = new int[sourceWidth];
+        if (filter == ThumbnailFilter.NEAREST) {
+            int[] columns = new int[width];
+            for (int x = 0; x < width; x++) {
+                columns[x] = (int) ((2L * x + 1) * sourceWidth / (2L * width));
+            }
+            for (int y = 0, target = 0; target < height; y++) {
+                readChunks(row, 0, sourceWidth);
+                for (; target < height && (2L * target + 1) * sourceHeight / (2L * height) == y; target++) {
+                    for (int x = 0, i = target * width; x < width; x++, i++) {
+                        pixels[i] = row[columns[x]];
+                    }
+                }
+            }
+        } else {
+            int[] columns = new int[sourceWidth];
+            int[] columnCounts = new int[width];
+            for (int x = 0; x < sourceWidth; x++) {
+                columns[x] = (int) ((long) x * width / sourceWidth);
+                columnCounts[columns[x]]++;
+            }
+            long[] sums = new long[width * 4];
+            int target = 0;
+            int rows = 0;
+            for (int y = 0; y < sourceHeight; y++) {
+                readChunks(row, 0, sourceWidth);
+                int next = (int) ((long) y * height / sourceHeight);
+                if (next != target) {
+                    averageRow(sums, columnCounts, rows, pixels, target * width);
+                    target = next;
+                    rows = 0;
+                }
+                for (int x = 0; x < sourceWidth; x++) {
+                    int pixel = row[x];
+                    int a = pixel & 0xFF;
+                    int k = columns[x] * 4;
+                    sums[k] += (pixel >>> 24) * a;
+                    sums[k + 1] += ((pixel >>> 16) & 0xFF) * a;
+                    sums[k + 2] += ((pixel >>> 8) & 0xFF) * a;
+                    sums[k + 3] += a;
+                }
+                rows++;
+            }
+            if (rows > 0) {
+                averageRow(sums, columnCounts, rows, pixels, target * width);
+            }
+        }
+        Image image = new Image(width, height, header.hasAlpha(), pixels);
+        image.setLinear(header.isLinear());
+        return image;
+    }
+
+    /**
+     * Writes the averages of one row of thumbnail pixels and clears the sums
+     * for the next.
+     */
+    private static void averageRow(long[] sums, int[] columnCounts, int rows, int[] pixels, int offset) {
+        for (int x = 0, k = 0; x < columnCounts.length; x++, k += 4) {
+            long alpha = sums[k + 3];
+            if (alpha > 0) {
+                long count = (long) columnCounts[x] * rows;
+                long r = (sums[k] + alpha / 2) / alpha;
+                long g = (sums[k + 1] + alpha / 2) / alpha;
+                long b = (sums[k + 2] + alpha / 2) / alpha;
+                long a = (alpha + count / 2) / count;
+                pixels[offset + x] = (int) (r << 24 | g << 16 | b << 8 | a);
+            } else {
+                pixels[offset + x] = 0;
+            }
+            sums[k] = 0;
+            sums[k + 1] = 0;
+            sums[k + 2] = 0;
+            sums[k + 3] = 0;
+        }
+    }
+
+    /**
+     * Decodes the rows {@code fromRow} (inclusive) to {@code toRow}
+     * (exclusive) of the QOI image starting at the position of {@code data},
+     * beginning at the nearest checkpoint of {@code index} above them. The
+     * position of {@code data} is not changed.
+     */
+    public static Image decodeRows(ByteBuffer data, QoiIndex index, int fromRow, int toRow) throws IOException {
+        return decodeRegion(data, index, 0, fromRow, index.getWidth(), toRow - fromRow);
+    }
+
+    /**
+     * Decodes a rectangle of the QOI image starting at the position of
+     * {@code data}. Only the rows from the nearest checkpoint of {@code index}
+     * down to the bottom of the rectangle are decoded. The position of
+     * {@code data} is not changed.
+     */
+    public static Image decodeRegion(ByteBuffer data, QoiIndex index, int x, int y, int width, int height)
+            throws IOException {
+        QoiHeader header = QoiHeader.read(data.duplicate());
+        checkRegion(header, index, x, y, width, height);
+        ByteBuffer chunks = data.duplicate();
+        chunks.position(data.position() + (int) index.checkpointFor(y).offset);
+        return new StandardDecoder(chunks).readRegion(header, index, x, y, width, height);
+    }
+
+    public static Image decodeRows(Path path, QoiIndex index, int fromRow, int toRow) throws IOException {
+        return decodeRegion(path, index, 0, fromRow, index.getWidth(), toRow - fromRow);
+    }
+
+    /**
+     * Decodes a rectangle of a QOI file, mapping only the bytes between the
+     * checkpoints around it.
+     */
+    public static Image decodeRegion(Path path, QoiIndex index, int x, int y, int width, int height)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            QoiHeader header = QoiHeader.read(channel);
+            checkRegion(header, index, x, y, width, height);
+            long start = index.checkpointFor(y).offset;
+            long end = channel.size();
+            int next = (y + height - 1) / index.getInterval() + 1;
+            if (height > 0 && next < index.getCheckpointCount()) {
+                // the chunk at the next checkpoint may be a run that covers our last row
+                end = Math.min(end, index.getCheckpoint(next).offset + StandardEncoder.MaxChunkSize);
+            }
+            if (end - start > Integer.MAX_VALUE) {
+                channel.position(start);
+                return new StandardDecoder(Channels.newInputStream(channel)).readRegion(header, index, x, y,
+                        width, height);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            return new StandardDecoder(mapped).readRegion(header, index, x, y, width, height);
+        }
+    }
+
+    private static void checkRegion(QoiHeader header, QoiIndex index, int x, int y, int width, int height) {
+        if (header.getWidth() != index.getWidth() || header.getHeight() != index.getHeight()) {
+            throw new IllegalArgumentException("index does not belong to this image");
+        }
+        if (x < 0 || y < 0 || width < 0 || height < 0 || x > header.getWidth() - width
+                || y > header.getHeight() - height) {
+            throw new IndexOutOfBoundsException("region " + width + "x" + height + " at " + x + "," + y
+                    + " is outside the image");
+        }
+        if ((long) width * height > Image.MaxPixels) {
+            throw new IllegalArgumentException("region is too large: " + width + "x" + height);
+        }
+    }
+
+    /**
+     * Decodes a region with the source positioned at the checkpoint for row
+     * {@code y}. Rows above the region are decoded into a scratch row and
+     * dropped.
+     */
+    private Image readRegion(QoiHeader header, QoiIndex index, int x, int y, int width, int height)
+            throws IOException {
+        int[] pixels = new int[width * height];
+        if (height > 0 && width > 0) {
+            QoiIndex.Checkpoint checkpoint = index.checkpointFor(y);
+            open();
+            System.arraycopy(checkpoint.cache, 0, cache, 0, cache.length);
+            pixel = checkpoint.prev;
+            run = 0;
+            if (checkpoint.run > 0) {
+                skipRun(checkpoint.run);
+            }
+            int imageWidth = header.getWidth();
+            int[] row = new int[imageWidth];
+            for (int r = y - y % index.getInterval(); r < y; r++) {
+                readChunks(row, 0, imageWidth);
+            }
+            if (width == imageWidth) {
+                readChunks(pixels, 0, pixels.length);
+            } else {
+                for (int r = 0; r < height; r++) {
+                    readChunks(row, 0, x + width);
+                    System.arraycopy(row, x, pixels, r * width, width);
+                    skipPixels(row, imageWidth - x - width);
+                }
+            }
+        }
+        Image image = new Image(width, height, header.hasAlpha(), pixels);
+        image.setLinear(header.isLinear());
+        return image;
+    }
+
+    /**
+     * Reads the run chunk at a checkpoint and drops the {@code count} pixels
+     * of it that belong to the rows above.
+     */
+    private void skipRun(int count) throws IOException {
+        require(1);
+        int tag = buffer[pos++] & 0xFF;
+        int length = (tag & 0b111111) + 1;
+        if (tag >>> 6 != 0b11 || tag >= 0b11111110 || length < count) {
+            throw new IOException("QOI index does not match the image");
+        }
+        run = length - count;
+    }
+
+    private void skipPixels(int[] scratch, int count) throws IOException {
+        while (count > 0) {
+            int n = Math.min(count, scratch.length);
+            readChunks(scratch, 0, n);
+            count -= n;
+        }
+    }
+
+    private void open() {
+        if (source != null) {
+            if (source.hasArray()) {
+                buffer = source.array();
+                pos = source.arrayOffset() + source.position();
+                limit = source.arrayOffset() + source.limit();
+            } else if (buffer == null) {
+                buffer = new byte[BlockSize];
+            }
+        } else if (in != null) {
+            if (buffer == null) {
+                buffer = new byte[BlockSize];
+            }
+            pos = 0;
+            limit = 0;
+        } else {
+            pos = 0;
+        }
+    }
+
+    /**
+     * Advances the source position to the first byte that was not decoded.
+     */
+    private void consumeSource() {
+        if (source.hasArray()) {
+            source.position(pos - source.arrayOffset());
+        } else {
+            source.position(source.position() - (limit - pos));
+            pos = 0;
+            limit = 0;
+        }
+    }
+
+    private QoiHeader readQoiHeader() throws IOException {
+        require(StandardEncoder.HeaderSize);
+        QoiHeader header = QoiHeader.parse(buffer, pos);
+        pos += StandardEncoder.HeaderSize;
+        if ((long) header.getWidth() * header.getHeight() > Image.MaxPixels) {
+            throw new IOException("QOI image is too large: " + header.getWidth() + "x" + header.getHeight());
+        }
+        long left = bytesLeft();
+        if (left >= 0 && !header.fitsIn(left)) {
+            throw new EOFException("truncated QOI image: " + left + " bytes cannot hold " + header.getWidth() + "x"
+                    + header.getHeight() + " pixels");
+        }
+        return header;
+    }
+
+    /**
+     * Bytes of input not read yet, or -1 when reading from a stream.
+     */
+    private long bytesLeft() {
+        if (in != null) {
+            return -1;
+        }
+        if (source != null && !source.hasArray()) {
+            return limit - pos + source.remaining();
+        }
+        return limit - pos;
+    }
+
+    private Image readHeader(int[] pixels) throws IOException {
+        QoiHeader header = readQoiHeader();
+        int width = header.getWidth();
+        int height = header.getHeight();
+        int size = width * height;
+        if (pixels == null || pixels.length < size) {
+            pixels = new int[size];
+        }
+        Image image = new Image(width, height, header.hasAlpha(), pixels);
+        image.setLinear(header.isLinear());
+        return image;
+    }
+
+    /**
+     * Prepares to read chunks from the start of the input, in the initial
+     * decoder state.
+     */
+    void start() {
+        open();
+        resetState();
+    }
+
+    void resetState() {
+        Arrays.fill(cache, 0);
+        pixel = 0x000000FF;
+        run = 0;
+    }
+
+    /**
+     * Continues as if {@code pixel} had just been decoded, without touching
+     * the index cache.
+     */
+    void setPrevious(int pixel) {
+        this.pixel = pixel;
+        run = 0;
+    }
+
+    void readPixels(int[] pixels, int from, int to) throws IOException {
+        readChunks(pixels, from, to);
+    }
+
+    int readByte() throws IOException {
+        require(1);
+        return buffer[pos++] & 0xFF;
+    }
+
+    /**
+     * Reads an unsigned LEB128 number of up to 31 bits.
+     */
+    int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if (b < 0x80) {
+                if (shift == 28 && b > 0x07) {
+                    break;
+                }
+                return value;
+            }
+        }
+        throw new IOException("invalid number in QOI stream");
+    }
+
+    /**
+     * Decodes pixels {@code from} to {@code to}. The previous pixel and what
+     * is left of a run that did not fit carry over to the next call.
+     */
+    private void readChunks(int[] pixels, int from, int to) throws IOException {
+        int[] cache = this.cache;
+        int pixel = this.pixel;
+        int i = from;
+        if (run > 0) {
+            int end = Math.min(i + run, to);
+            Arrays.fill(pixels, i, end, pixel);
+            run -= end - i;
+            i = end;
+        }
+        while (i < to) {
+            if (limit - pos < StandardEncoder.MaxChunkSize) {
+                require(1);
+            }
+            byte[] buffer = this.buffer;
+            int tag = buffer[pos++] & 0xFF;
+            if (tag == 0b11111110) {
+                require(3);
+                pixel = (buffer[pos] & 0xFF) << 24
+                        | (buffer[pos + 1] & 0xFF) << 16
+                        | (buffer[pos + 2] & 0xFF) << 8
+                        | (pixel & 0xFF);
+                pos += 3;
+            } else if (tag == 0b11111111) {
+                require(4);
+                pixel = (buffer[pos] & 0xFF) << 24
+                        | (buffer[pos + 1] & 0xFF) << 16
+                        | (buffer[pos + 2] & 0xFF) << 8
+                        | (buffer[pos + 3] & 0xFF);
+                pos += 4;
+            } else {
+                switch (tag >>> 6) {
+                    case 0b00:
+                        pixel = cache[tag];
+                        break;
+                    case 0b01: {
+                        int r = (pixel >>> 24) + ((tag >>> 4) & 0b11) - 2;
+                        int g = (pixel >>> 16) + ((tag >>> 2) & 0b11) - 2;
+                        int b = (pixel >>> 8) + (tag & 0b11) - 2;
+                        pixel = (r & 0xFF) << 24 | (g & 0xFF) << 16 | (b & 0xFF) << 8 | (pixel & 0xFF);
+                        break;
+                    }
+                    case 0b10: {
+                        require(1);
+                        int second = buffer[pos++] & 0xFF;
+                        int dg = (tag & 0b111111) - 32;
+                        int r = (pixel >>> 24) + dg - 8 + (second >>> 4);
+                        int g = (pixel >>> 16) + dg;
+                        int b = (pixel >>> 8) + dg - 8 + (second & 0b1111);
+                        pixel = (r & 0xFF) << 24 | (g & 0xFF) << 16 | (b & 0xFF) << 8 | (pixel & 0xFF);
+                        break;
+                    }
+                    default: {
+                        int length = (tag & 0b111111) + 1;
+                        int end = Math.min(i + length, to);
+                        Arrays.fill(pixels, i, end, pixel);
+                        run = length - (end - i);
+                        i = end;
+                        cache[StandardEncoder.calculateIndex(pixel)] = pixel;
+                        continue;
+                    }
+                }
+            }
+            cache[StandardEncoder.calculateIndex(pixel)] = pixel;
+            pixels[i++] = pixel;
+        }
+        this.pixel = pixel;
+    }
+
+    /**
+     * Skips the end marker if it is there, without insisting on it.
+     */
+    private void skipEndMarker() throws IOException {
+        if (limit - pos < StandardEncoder.EndMarkerSize) {
+            refill(StandardEncoder.EndMarkerSize);
+        }
+        pos += Math.min(StandardEncoder.EndMarkerSize, limit - pos);
+    }
+
+    private void require(int count) throws IOException {
+        if (limit - pos < count) {
+            refill(count);
+            if (limit - pos < count) {
+                throw new EOFException("truncated QOI image");
+            }
+        }
+    }
+
+    /**
+     * Moves the unread bytes to the front of the buffer and reads until at
+     * least {@code count} bytes are available or the stream ends.
+     */
+    private void refill(int count) throws IOException {
+        if (in == null && (source == null || source.hasArray())) {
+            return;
+        }
+        int remaining = limit - pos;
+        System.arraycopy(buffer, pos, buffer, 0, remaining);
+        pos = 0;
+        limit = remaining;
+        if (source != null) {
+            int read = Math.min(buffer.length - limit, source.remaining());
+            source.get(buffer, limit, read);
+            limit += read;
+            return;
+        }
+        while (limit < count) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                break;
+            }
+            limit += read;
+        }
+    }
+
+}
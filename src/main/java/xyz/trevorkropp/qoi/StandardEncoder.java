@@ -3,24 +3,74 @@ package xyz.trevorkropp.qoi;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class StandardEncoder implements Encoder {
 
     private Image image;
-    private OutputStream out;
 
-    private RGBA[] cache;
-    private RGBA prev;
-    private int runLength;
+    private ChunkEncoder chunks;
+    private EncodeListener listener;
+    private int effort;
 
-    private static final int ChannelRGB = 3;
-    private static final int ChannelRGBA = 4;
-    private static final int ColorSpaceSRGB = 0;
+    static final int ChannelRGB = 3;
+    static final int ChannelRGBA = 4;
+    static final int ColorSpaceSRGB = 0;
+    static final int ColorSpaceLinear = 1;
 
+    public static final int MaxEffort = 2;
+
+    static final int HeaderSize = 14;
+    static final int EndMarkerSize = 8;
+    static final int MaxChunkSize = 5;
+    static final int BlockSize = 64 * 1024;
+    static final int FileBlockSize = 1024 * 1024;
+
+    private static final OutputStream Discard = new OutputStream() {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+    };
+
+    /**
+     * Chunks are collected in a block buffer and written to {@code out} only
+     * when the block fills up, so {@code out} does not need to be buffered.
+     */
     public StandardEncoder(OutputStream out, Image image) {
+        this(out, image, BlockSize);
+    }
+
+    /**
+     * Creates an encoder that is not bound to an image yet; call
+     * {@link #reset(OutputStream, Image)} before encoding.
+     */
+    public StandardEncoder() {
+        this.chunks = new ChunkEncoder(null, new byte[BlockSize]);
+    }
+
+    private StandardEncoder(OutputStream out, Image image, int blockSize) {
+        this.image = image;
+        this.chunks = new ChunkEncoder(out, new byte[(int) Math.min(blockSize, maxEncodedSize(image))]);
+    }
+
+    private StandardEncoder(Image image) {
+        long size = maxEncodedSize(image);
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("image is too large to encode into a byte array");
+        }
         this.image = image;
-        this.out = out;
+        this.chunks = new ChunkEncoder(null, new byte[(int) size]);
     }
 
     public static void encode(OutputStream out, Image image) throws IOException {
@@ -28,191 +78,378 @@ public class StandardEncoder implements Encoder {
         encoder.encode();
     }
 
-    public void encode() throws IOException {
-        reset();
-        writeHeader();
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
-                writeChunk(x, y);
-            }
-        }
-        if (runLength > 0) {
-            writeRunChunk();
+    /**
+     * Encodes with the given effort; see {@link #setEffort(int)}.
+     */
+    public static void encode(OutputStream out, Image image, int effort) throws IOException {
+        StandardEncoder encoder = new StandardEncoder(out, image);
+        encoder.setEffort(effort);
+        encoder.encode();
+    }
+
+    /**
+     * Writes the image to a file, creating or replacing it. Output goes to the
+     * file channel in 1 MiB blocks through a direct buffer.
+     */
+    public static void encode(Path path, Image image) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            int blockSize = (int) Math.min(FileBlockSize, maxEncodedSize(image));
+            StandardEncoder encoder = new StandardEncoder(new ChannelOutputStream(channel, blockSize), image,
+                    blockSize);
+            encoder.encode();
         }
-        writeEndMarker();
     }
 
-    private void reset() {
-        cache = new RGBA[64];
-        for (int i = 0; i < cache.length; i++) {
-            cache[i] = new RGBA(0, 0, 0, 0);
+    /**
+     * Encodes an int raster in any {@link PixelLayout} without building an
+     * {@link Image} first; rows are converted one at a time. An
+     * {@link PixelLayout#RGBA} raster without row padding is encoded in place.
+     */
+    public static void encode(OutputStream out, int width, int height, int[] src, int offset, int stride,
+            PixelLayout layout) throws IOException {
+        encode(out, width, height, src, offset, stride, layout, false);
+    }
+
+    /**
+     * Like {@link #encode(OutputStream, int, int, int[], int, int, PixelLayout)},
+     * declaring linear rather than sRGB channels in the header if
+     * {@code linear} is set.
+     */
+    public static void encode(OutputStream out, int width, int height, int[] src, int offset, int stride,
+            PixelLayout layout, boolean linear) throws IOException {
+        PixelLayout.checkRaster(src.length, offset, stride, width, height);
+        boolean alpha = false;
+        for (int y = 0; y < height && !alpha; y++) {
+            alpha = !layout.isOpaque(src, offset + y * stride, width);
+        }
+        ChunkEncoder chunks = startRaster(out, width, height, alpha, linear);
+        if (layout == PixelLayout.RGBA && stride == width) {
+            encodePixels(chunks, alpha, src, offset, offset + width * height);
+        } else {
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                layout.unpack(src, offset + y * stride, row, 0, width);
+                encodePixels(chunks, alpha, row, 0, width);
+            }
         }
-        prev = new RGBA(0, 0, 0, 255);
-        runLength = 0;
+        chunks.finish();
     }
 
-    private void writeHeader() throws IOException {
-        out.write(new byte[] { 'q', 'o', 'i', 'f' });
-        out.write(intToBytes(image.getWidth()));
-        out.write(intToBytes(image.getHeight()));
-        if (image.isAlpha()) {
-            out.write(ChannelRGBA);
+    /**
+     * Encodes a byte raster in any {@link PixelLayout}; {@code offset} and
+     * {@code stride} are in bytes.
+     */
+    public static void encode(OutputStream out, int width, int height, byte[] src, int offset, int stride,
+            PixelLayout layout) throws IOException {
+        encode(out, width, height, src, offset, stride, layout, false);
+    }
+
+    /**
+     * Like {@link #encode(OutputStream, int, int, byte[], int, int, PixelLayout)},
+     * declaring linear rather than sRGB channels in the header if
+     * {@code linear} is set.
+     */
+    public static void encode(OutputStream out, int width, int height, byte[] src, int offset, int stride,
+            PixelLayout layout, boolean linear) throws IOException {
+        PixelLayout.checkRaster(src.length, offset, stride, width * layout.getBytesPerPixel(), height);
+        boolean alpha = false;
+        for (int y = 0; y < height && !alpha; y++) {
+            alpha = !layout.isOpaque(src, offset + y * stride, width);
+        }
+        ChunkEncoder chunks = startRaster(out, width, height, alpha, linear);
+        if (layout == PixelLayout.RGB) {
+            for (int y = 0; y < height; y++) {
+                chunks.encodeRGB(src, offset + y * stride, width);
+            }
         } else {
-            out.write(ChannelRGB);
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                layout.unpack(src, offset + y * stride, row, 0, width);
+                encodePixels(chunks, alpha, row, 0, width);
+            }
         }
-        out.write(ColorSpaceSRGB);
+        chunks.finish();
+    }
+
+    /**
+     * Encodes a byte raster held in a buffer, for example one filled by
+     * native code; {@code offset} is an absolute index and the buffer's
+     * position is not changed.
+     */
+    public static void encode(OutputStream out, int width, int height, ByteBuffer src, int offset, int stride,
+            PixelLayout layout) throws IOException {
+        encode(out, width, height, src, offset, stride, layout, false);
     }
 
-    private boolean isNewRun(RGBA next) {
-        return runLength == 0 && prev.equals(next);
+    /**
+     * Like {@link #encode(OutputStream, int, int, ByteBuffer, int, int, PixelLayout)},
+     * declaring linear rather than sRGB channels in the header if
+     * {@code linear} is set.
+     */
+    public static void encode(OutputStream out, int width, int height, ByteBuffer src, int offset, int stride,
+            PixelLayout layout, boolean linear) throws IOException {
+        if (src.hasArray()) {
+            encode(out, width, height, src.array(), src.arrayOffset() + offset, stride, layout, linear);
+            return;
+        }
+        int rowBytes = width * layout.getBytesPerPixel();
+        PixelLayout.checkRaster(src.limit(), offset, stride, rowBytes, height);
+        boolean alpha = false;
+        for (int y = 0; y < height && !alpha; y++) {
+            alpha = !layout.isOpaque(src, offset + y * stride, width);
+        }
+        ChunkEncoder chunks = startRaster(out, width, height, alpha, linear);
+        int[] row = new int[width];
+        byte[] scratch = new byte[rowBytes];
+        for (int y = 0; y < height; y++) {
+            layout.unpack(src, offset + y * stride, row, 0, width, scratch);
+            encodePixels(chunks, alpha, row, 0, width);
+        }
+        chunks.finish();
     }
 
-    private boolean canLengthenRun(RGBA next) {
-        return runLength > 0 && prev.equals(next) && runLength <= 61;
+    private static ChunkEncoder startRaster(OutputStream out, int width, int height, boolean alpha,
+            boolean linear) {
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("invalid dimensions: " + width + "x" + height);
+        }
+        ChunkEncoder chunks = new ChunkEncoder(out, new byte[(int) Math.min(BlockSize, maxEncodedSize(width, height))]);
+        chunks.reset();
+        chunks.writeHeader(width, height, alpha ? ChannelRGBA : ChannelRGB, linear ? ColorSpaceLinear : ColorSpaceSRGB);
+        return chunks;
     }
 
-    private int normalizeDiff(int diff) {
-        diff = diff % 256;
-        if (diff < 0) {
-            diff += 256;
+    static void encodePixels(ChunkEncoder chunks, boolean alpha, int[] pixels, int from, int to)
+            throws IOException {
+        if (alpha) {
+            chunks.encode(pixels, from, to);
+        } else {
+            chunks.encodeOpaque(pixels, from, to);
         }
-        return diff;
     }
 
-    private int diff(byte prev, byte next) {
-        int prevNum = prev & 0xFF;
-        int nextNum = next & 0xFF;
-        return normalizeDiff(nextNum - prevNum + 2);
+    /**
+     * Encodes an off-heap image, copying its pixels to the heap a block at a
+     * time.
+     */
+    public static void encode(OutputStream out, LargeImage image) throws IOException {
+        int blockSize = (int) Math.min(BlockSize, maxEncodedSize(image.getWidth(), image.getHeight()));
+        encode(new ChunkEncoder(out, new byte[blockSize]), image);
     }
 
-    private int lumaDg(RGBA prev, RGBA next) {
-        int prevG = prev.getG() & 0xFF;
-        int nextG = next.getG() & 0xFF;
-        return normalizeDiff(nextG - prevG + 32);
+    public static void encode(Path path, LargeImage image) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            int blockSize = (int) Math.min(FileBlockSize, maxEncodedSize(image.getWidth(), image.getHeight()));
+            encode(new ChunkEncoder(new ChannelOutputStream(channel, blockSize), new byte[blockSize]), image);
+        }
     }
 
-    private int lumaDrDg(RGBA prev, RGBA next) {
-        int prevR = prev.getR() & 0xFF;
-        int nextR = next.getR() & 0xFF;
-        int prevG = prev.getG() & 0xFF;
-        int nextG = next.getG() & 0xFF;
-        int drdg = (nextR - prevR) - (nextG - prevG) + 8;
-        return normalizeDiff(drdg);
+    private static void encode(ChunkEncoder chunks, LargeImage image) throws IOException {
+        chunks.reset();
+        chunks.writeHeader(image.getWidth(), image.getHeight(), image.isAlpha() ? ChannelRGBA : ChannelRGB,
+                image.isLinear() ? ColorSpaceLinear : ColorSpaceSRGB);
+        long size = image.getSize();
+        int[] block = new int[(int) Math.min(BlockSize, size)];
+        for (long index = 0; index < size; index += block.length) {
+            int length = (int) Math.min(block.length, size - index);
+            image.getPixels(index, block, 0, length);
+            encodePixels(chunks, image.isAlpha(), block, 0, length);
+        }
+        chunks.finish();
     }
 
-    private int lumaDbDg(RGBA prev, RGBA next) {
-        int prevB = prev.getB() & 0xFF;
-        int nextB = next.getB() & 0xFF;
-        int prevG = prev.getG() & 0xFF;
-        int nextG = next.getG() & 0xFF;
-        int dbdg = (nextB - prevB) - (nextG - prevG) + 8;
-        return normalizeDiff(dbdg);
+    /**
+     * Writes the image to {@code path} like {@link #encode(Path, Image)} and a
+     * {@link QoiIndex} with a checkpoint every {@code rowsPerCheckpoint} rows
+     * to {@code indexPath}.
+     */
+    public static QoiIndex encode(Path path, Image image, Path indexPath, int rowsPerCheckpoint)
+            throws IOException {
+        QoiIndex index;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            int blockSize = (int) Math.min(FileBlockSize, maxEncodedSize(image));
+            StandardEncoder encoder = new StandardEncoder(new ChannelOutputStream(channel, blockSize), image,
+                    blockSize);
+            index = encoder.encodeWithIndex(rowsPerCheckpoint);
+        }
+        index.write(indexPath);
+        return index;
     }
 
-    private boolean isSmallDiff(int diff) {
-        return diff <= 3;
+    public static byte[] encodeToByteArray(Image image) {
+        StandardEncoder encoder = new StandardEncoder(image);
+        try {
+            encoder.encode();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return Arrays.copyOf(encoder.chunks.getBuffer(), encoder.chunks.getPosition());
     }
 
-    private boolean isSmallLumaDiff(int dg, int drdg, int dbdg) {
-        return dg <= 63 && drdg <= 15 && dbdg <= 15;
+    /**
+     * Upper bound of the encoded size in bytes: every pixel takes at most an
+     * RGBA chunk.
+     */
+    public static long maxEncodedSize(int width, int height) {
+        return HeaderSize + (long) width * height * MaxChunkSize + EndMarkerSize;
     }
 
-    private void writeChunk(int x, int y) throws IOException {
-        RGBA pixel = image.getAt(x, y);
-        int index = calculateIndex(pixel);
-        RGBA cachePixel = cache[index];
-        if (isNewRun(pixel) || canLengthenRun(pixel)) {
-            runLength++;
-            cache[index] = pixel;
-        } else if (runLength > 0) {
-            writeRunChunk();
-            runLength = 0;
-            writeChunk(x, y);
-            return;
-        } else if (pixel.equals(cachePixel)) {
-            writeIndexChunk(index);
-        } else if (prev.getA() == pixel.getA()) {
-            int dr = diff(prev.getR(), pixel.getR());
-            int dg = diff(prev.getG(), pixel.getG());
-            int db = diff(prev.getB(), pixel.getB());
-            int dgLuma = lumaDg(prev, pixel);
-            int drdgLuma = lumaDrDg(prev, pixel);
-            int dbdgLuma = lumaDbDg(prev, pixel);
-            if (isSmallDiff(dr) && isSmallDiff(dg) && isSmallDiff(db)) {
-                writeDiffChunk(dr, dg, db);
-            } else if (isSmallLumaDiff(dgLuma, drdgLuma, dbdgLuma)) {
-                writeLumaChunk(dgLuma, drdgLuma, dbdgLuma);
-            } else {
-                writeRGBChunk(pixel);
+    public static long maxEncodedSize(Image image) {
+        return maxEncodedSize(image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Predicts the encoded size by encoding a {@code sampleRate} share of the
+     * rows, spread evenly over the image, and extrapolating. Each sampled row
+     * is preceded by the row above it so that the previous pixel and index
+     * cache are about what a full encode would have. A rate of 1 encodes
+     * everything and gives the exact size.
+     */
+    public static SizeEstimate estimateEncodedSize(Image image, double sampleRate) {
+        if (!(sampleRate > 0 && sampleRate <= 1)) {
+            throw new IllegalArgumentException("invalid sample rate: " + sampleRate);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean alpha = image.isAlpha();
+        int[] pixels = image.getPixels();
+        long worstCase = maxEncodedSize(image);
+        long raw = (long) width * height * (alpha ? ChannelRGBA : ChannelRGB);
+        int samples = (int) Math.min(height, Math.ceil(height * sampleRate));
+        ChunkEncoder chunks = new ChunkEncoder(Discard, new byte[BlockSize]);
+        chunks.reset();
+        chunks.writeHeader(image);
+        try {
+            if (samples == height || width == 0) {
+                encodePixels(chunks, alpha, pixels, 0, width * height);
+                chunks.finish();
+                return new SizeEstimate(chunks.getEncodedSize(), 0, worstCase, raw, height, true);
             }
-            cache[index] = pixel;
-        } else {
-            writeRGBAChunk(pixel);
-            cache[index] = pixel;
+            double sum = 0;
+            double sumOfSquares = 0;
+            for (int i = 0; i < samples; i++) {
+                int y = (int) ((i + 0.5) * height / samples);
+                if (y > 0) {
+                    encodePixels(chunks, alpha, pixels, (y - 1) * width, y * width);
+                }
+                long before = chunks.getEncodedSize();
+                encodePixels(chunks, alpha, pixels, y * width, (y + 1) * width);
+                double bytes = chunks.getEncodedSize() - before;
+                sum += bytes;
+                sumOfSquares += bytes * bytes;
+            }
+            double mean = sum / samples;
+            // one row says nothing about the spread, so allow for it being off by its own size
+            double variance = samples > 1 ? Math.max(0, (sumOfSquares - sum * mean) / (samples - 1)) : mean * mean;
+            double error = 1.96 * height * Math.sqrt(variance / samples * (1 - (double) samples / height));
+            long minimum = HeaderSize + EndMarkerSize + ((long) width * height + 61) / 62;
+            long estimate = HeaderSize + EndMarkerSize + Math.round(mean * height);
+            estimate = Math.max(minimum, Math.min(worstCase, estimate));
+            return new SizeEstimate(estimate, (long) Math.ceil(error), worstCase, raw, samples, false);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
         }
-        prev = pixel;
     }
 
-    private void writeRGBChunk(RGBA pixel) throws IOException {
-        out.write(0b11111110);
-        out.write(pixel.getR());
-        out.write(pixel.getG());
-        out.write(pixel.getB());
+    /**
+     * Rebinds this encoder to another image and stream. The index cache and
+     * output buffer are reused, so encoding many images with one encoder does
+     * not allocate.
+     */
+    public void reset(OutputStream out, Image image) {
+        this.image = image;
+        chunks.setOutput(out, (int) Math.min(BlockSize, maxEncodedSize(image)));
     }
 
-    private void writeRGBAChunk(RGBA pixel) throws IOException {
-        out.write(0b11111111);
-        out.write(pixel.getR());
-        out.write(pixel.getG());
-        out.write(pixel.getB());
-        out.write(pixel.getA());
+    /**
+     * How hard to work for smaller output, from 0 to {@link #MaxEffort}. At 0,
+     * the default, pixels are encoded exactly. Above 0, fully transparent
+     * pixels may come out with a different RGB when that makes them cheaper
+     * to encode; every other pixel is exact. Opaque images are not affected.
+     */
+    public void setEffort(int effort) {
+        if (effort < 0 || effort > MaxEffort) {
+            throw new IllegalArgumentException("invalid effort: " + effort);
+        }
+        this.effort = effort;
     }
 
-    private void writeIndexChunk(int index) throws IOException {
-        out.write((byte) index);
+    public int getEffort() {
+        return effort;
     }
 
-    private void writeDiffChunk(int dr, int dg, int db) throws IOException {
-        byte diffByte = 0b01 << 6;
-        diffByte |= dr << 4;
-        diffByte |= dg << 2;
-        diffByte |= db;
-        out.write(diffByte);
+    public void encode() throws IOException {
+        long started = System.nanoTime();
+        chunks.reset();
+        chunks.writeHeader(image);
+        encodePixels(0, image.getWidth() * image.getHeight());
+        chunks.finish();
+        if (listener != null) {
+            listener.encoded(chunks.statistics(image.getWidth(), image.getHeight(), System.nanoTime() - started));
+        }
     }
 
-    private void writeLumaChunk(int dg, int drdg, int dbdg) throws IOException {
-        byte first = (byte) 0b10000000;
-        first |= dg;
-        out.write(first);
-        byte second = (byte) 0;
-        second |= drdg << 4;
-        second |= dbdg;
-        out.write(second);
+    /**
+     * Reports statistics for every encode from now on, or stops reporting if
+     * {@code listener} is null. Chunks are only counted while a listener is
+     * set.
+     */
+    public void setListener(EncodeListener listener) {
+        this.listener = listener;
+        chunks.setCounting(listener != null);
     }
 
-    private void writeRunChunk() throws IOException {
-        byte chunk = (byte) 0b11000000;
-        chunk |= runLength - 1;
-        out.write(chunk);
+    /**
+     * Encodes like {@link #encode()} and returns an index with a checkpoint
+     * every {@code rowsPerCheckpoint} rows, which the caller stores next to
+     * the output.
+     */
+    public QoiIndex encodeWithIndex(int rowsPerCheckpoint) throws IOException {
+        if (rowsPerCheckpoint <= 0) {
+            throw new IllegalArgumentException("invalid checkpoint interval: " + rowsPerCheckpoint);
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        List<QoiIndex.Checkpoint> checkpoints = new ArrayList<>();
+        long started = System.nanoTime();
+        chunks.reset();
+        chunks.writeHeader(image);
+        for (int row = 0; row < height;) {
+            int rows = Math.min(rowsPerCheckpoint, height - row);
+            checkpoints.add(chunks.checkpoint());
+            encodePixels(row * width, (row + rows) * width);
+            row += rows;
+        }
+        chunks.finish();
+        if (listener != null) {
+            listener.encoded(chunks.statistics(width, height, System.nanoTime() - started));
+        }
+        return new QoiIndex(width, height, rowsPerCheckpoint, checkpoints);
     }
 
-    private void writeEndMarker() throws IOException {
-        out.write(new byte[] { 0, 0, 0, 0, 0, 0, 0, 1 });
+    /**
+     * Picks the kernel once for the whole image: images without alpha skip
+     * all alpha handling. Above effort 0, transparent pixels are recolored
+     * while encoding.
+     */
+    private void encodePixels(int from, int to) throws IOException {
+        if (effort == 0 || !image.isAlpha()) {
+            encodePixels(chunks, image.isAlpha(), image.getPixels(), from, to);
+            return;
+        }
+        TransparentPixelOptimizer.encode(chunks, effort, image.getPixels(), from, to,
+                image.getWidth() * image.getHeight());
     }
 
-    private int calculateIndex(RGBA rgba) {
-        int r = rgba.getR() & 0xFF;
-        int g = rgba.getG() & 0xFF;
-        int b = rgba.getB() & 0xFF;
-        int a = rgba.getA() & 0xFF;
+    static int calculateIndex(int pixel) {
+        int r = pixel >>> 24;
+        int g = (pixel >>> 16) & 0xFF;
+        int b = (pixel >>> 8) & 0xFF;
+        int a = pixel & 0xFF;
         return (r * 3 + g * 5 + b * 7 + a * 11) % 64;
     }
 
-    private byte[] intToBytes(final int i) {
-        ByteBuffer bb = ByteBuffer.allocate(4);
-        bb.order(ByteOrder.BIG_ENDIAN);
-        bb.putInt(i);
-        return bb.array();
-    }
-
 }
@@ -0,0 +1,150 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes an image one row at a time, so the whole image never has to be in
+ * memory. Call {@link #begin(int, int, int)}, then {@link #writeRow(int[])}
+ * once per row from top to bottom, then {@link #finish()}. The encoder can be
+ * reused for another image after {@link #finish()}.
+ */
+public class StreamingEncoder {
+
+    private final ChunkEncoder chunks;
+
+    private int width;
+    private int height;
+    private int channels;
+    private int row = -1;
+
+    private int[] rowPixels;
+
+    private EncodeListener listener;
+    private long started;
+
+    /**
+     * Output is written to {@code out} in blocks as rows are encoded, so
+     * {@code out} does not need to be buffered.
+     */
+    public StreamingEncoder(OutputStream out) {
+        this.chunks = new ChunkEncoder(out, new byte[StandardEncoder.BlockSize]);
+    }
+
+    public void begin(int width, int height, int channels) {
+        begin(width, height, channels, false);
+    }
+
+    /**
+     * Like {@link #begin(int, int, int)}, declaring linear rather than sRGB
+     * channels in the header if {@code linear} is set.
+     */
+    public void begin(int width, int height, int channels, boolean linear) {
+        if (row >= 0) {
+            throw new IllegalStateException("previous image was not finished");
+        }
+        if (width < 0 || height < 0) {
+            throw new IllegalArgumentException("invalid dimensions: " + width + "x" + height);
+        }
+        if (channels != StandardEncoder.ChannelRGB && channels != StandardEncoder.ChannelRGBA) {
+            throw new IllegalArgumentException("invalid channel count: " + channels);
+        }
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.row = 0;
+        this.started = System.nanoTime();
+        chunks.reset();
+        chunks.writeHeader(width, height, channels,
+                linear ? StandardEncoder.ColorSpaceLinear : StandardEncoder.ColorSpaceSRGB);
+    }
+
+    /**
+     * Encodes the next row from {@code width} pixels packed as
+     * {@code 0xRRGGBBAA}. With 3 channels, alpha is taken to be 255.
+     */
+    public void writeRow(int[] pixels) throws IOException {
+        writeRow(pixels, 0);
+    }
+
+    public void writeRow(int[] pixels, int offset) throws IOException {
+        nextRow();
+        if (offset < 0 || pixels.length - offset < width) {
+            throw new IndexOutOfBoundsException("row needs " + width + " pixels");
+        }
+        if (channels == StandardEncoder.ChannelRGBA) {
+            chunks.encode(pixels, offset, offset + width);
+        } else {
+            chunks.encodeOpaque(pixels, offset, offset + width);
+        }
+    }
+
+    /**
+     * Encodes the next row from {@code width * channels} bytes in RGB or RGBA
+     * order, depending on the channel count given to
+     * {@link #begin(int, int, int)}.
+     */
+    public void writeRow(byte[] pixels) throws IOException {
+        writeRow(pixels, 0);
+    }
+
+    public void writeRow(byte[] pixels, int offset) throws IOException {
+        nextRow();
+        if (offset < 0 || pixels.length - offset < width * channels) {
+            throw new IndexOutOfBoundsException("row needs " + width * channels + " bytes");
+        }
+        if (channels == StandardEncoder.ChannelRGB) {
+            chunks.encodeRGB(pixels, offset, width);
+            return;
+        }
+        if (rowPixels == null || rowPixels.length < width) {
+            rowPixels = new int[width];
+        }
+        int[] rowPixels = this.rowPixels;
+        for (int x = 0, i = offset; x < width; x++, i += 4) {
+            rowPixels[x] = (pixels[i] & 0xFF) << 24
+                    | (pixels[i + 1] & 0xFF) << 16
+                    | (pixels[i + 2] & 0xFF) << 8
+                    | (pixels[i + 3] & 0xFF);
+        }
+        chunks.encode(rowPixels, 0, width);
+    }
+
+    public void finish() throws IOException {
+        if (row < 0) {
+            throw new IllegalStateException("no image was begun");
+        }
+        if (row != height) {
+            throw new IllegalStateException("only " + row + " of " + height + " rows were written");
+        }
+        row = -1;
+        chunks.finish();
+        if (listener != null) {
+            listener.encoded(chunks.statistics(width, height, System.nanoTime() - started));
+        }
+    }
+
+    /**
+     * Reports statistics for every image finished from now on, or stops
+     * reporting if {@code listener} is null. Counting chunks costs a little
+     * on the hot path, so it is only done while a listener is set.
+     */
+    public void setListener(EncodeListener listener) {
+        if (row >= 0) {
+            throw new IllegalStateException("cannot change listener while encoding");
+        }
+        this.listener = listener;
+        chunks.setCounting(listener != null);
+    }
+
+    private void nextRow() {
+        if (row < 0) {
+            throw new IllegalStateException("no image was begun");
+        }
+        if (row == height) {
+            throw new IllegalStateException("all " + height + " rows were already written");
+        }
+        row++;
+    }
+
+}
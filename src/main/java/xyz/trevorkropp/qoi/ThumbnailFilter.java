@@ -0,0 +1,21 @@
+package xyz.trevorkropp.qoi;
+
+/**
+ * How {@link StandardDecoder#decodeThumbnail(int, int, ThumbnailFilter)}
+ * turns the source pixels that fall into a thumbnail pixel into one.
+ */
+public enum ThumbnailFilter {
+
+    /**
+     * Averages them, weighting color by alpha so fully transparent pixels do
+     * not tint their neighbours.
+     */
+    BOX,
+
+    /**
+     * Takes the one nearest the center. Decoding stops after the last row
+     * that is sampled.
+     */
+    NEAREST
+
+}
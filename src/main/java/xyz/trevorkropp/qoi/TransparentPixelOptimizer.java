@@ -0,0 +1,84 @@
+package xyz.trevorkropp.qoi;
+
+import java.io.IOException;
+
+/**
+ * Chooses the color of fully transparent pixels for encode effort above 0.
+ * Every chunk leaves the decoder in the same state: the pixel becomes the
+ * previous pixel and goes into the index cache. So for a given pixel the
+ * greedy choice of the smallest chunk cannot be improved on. The freedom
+ * left is the RGB of pixels with alpha 0, which do not show. Each stretch of
+ * them is encoded as one color repeated, so it takes one chunk and a run. If
+ * the previous pixel is transparent the stretch continues its run; otherwise
+ * it takes a transparent color already in the index cache if there is one.
+ * Failing that, it repeats one of its own pixels, so it only overwrites a
+ * cache slot that encoding it exactly would overwrite too: at effort 1 the
+ * first, and at effort 2 one whose slot the next {@link #Window} pixels do
+ * not hit. Every visible color the exact encoding keeps cached stays cached,
+ * and no visible pixel costs more than at effort 0. The other pixels are
+ * encoded straight from the image.
+ */
+final class TransparentPixelOptimizer {
+
+    static final int Window = 32;
+
+    private TransparentPixelOptimizer() {
+    }
+
+    /**
+     * Encodes pixels {@code from} to {@code to}, looking ahead at pixels up
+     * to {@code limit}. The choices only depend on the state of
+     * {@code chunks}, so an image can be encoded in any number of pieces.
+     */
+    static void encode(ChunkEncoder chunks, int effort, int[] pixels, int from, int to, int limit)
+            throws IOException {
+        int i = from;
+        while (i < to) {
+            int start = i;
+            while (i < to && (pixels[i] & 0xFF) != 0) {
+                i++;
+            }
+            chunks.encode(pixels, start, i);
+            if (i == to) {
+                return;
+            }
+            int end = i + 1;
+            while (end < to && (pixels[end] & 0xFF) == 0) {
+                end++;
+            }
+            int prev = chunks.getPrevious();
+            int color = (prev & 0xFF) == 0 ? prev : startTransparent(chunks, effort, pixels, i, end, limit);
+            chunks.encodeRepeated(color, end - i);
+            i = end;
+        }
+    }
+
+    private static int startTransparent(ChunkEncoder chunks, int effort, int[] pixels, int start, int next,
+            int limit) {
+        for (int slot = 0; slot < 64; slot++) {
+            // slots never written hold 0, which only hits in slot 0
+            int entry = chunks.getCached(slot);
+            if ((entry & 0xFF) == 0 && StandardEncoder.calculateIndex(entry) == slot) {
+                return entry;
+            }
+        }
+        if (effort < 2) {
+            return pixels[start];
+        }
+        long needed = 0;
+        for (int i = next, end = Math.min(limit, next + Window); i < end; i++) {
+            int pixel = pixels[i];
+            int slot = StandardEncoder.calculateIndex(pixel);
+            if ((pixel & 0xFF) != 0 && chunks.getCached(slot) == pixel) {
+                needed |= 1L << slot;
+            }
+        }
+        for (int i = start, end = Math.min(next, start + Window); i < end; i++) {
+            if ((needed & 1L << StandardEncoder.calculateIndex(pixels[i])) == 0) {
+                return pixels[i];
+            }
+        }
+        return pixels[start];
+    }
+
+}
@@ -0,0 +1,26 @@
+package xyz.trevorkropp.qoi.imageio;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.stream.ImageInputStream;
+
+final class ImageInputStreamAdapter extends InputStream {
+
+    private final ImageInputStream stream;
+
+    ImageInputStreamAdapter(ImageInputStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return stream.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        return stream.read(b, off, len);
+    }
+
+}
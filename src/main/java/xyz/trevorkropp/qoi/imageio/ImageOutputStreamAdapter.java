@@ -0,0 +1,26 @@
+package xyz.trevorkropp.qoi.imageio;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.stream.ImageOutputStream;
+
+final class ImageOutputStreamAdapter extends OutputStream {
+
+    private final ImageOutputStream stream;
+
+    ImageOutputStreamAdapter(ImageOutputStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        stream.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        stream.write(b, off, len);
+    }
+
+}
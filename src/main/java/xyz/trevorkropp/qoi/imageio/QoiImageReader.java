@@ -0,0 +1,128 @@
+package xyz.trevorkropp.qoi.imageio;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+
+import xyz.trevorkropp.qoi.QoiHeader;
+import xyz.trevorkropp.qoi.StandardDecoder;
+
+/**
+ * Decodes straight into the {@link DataBufferInt} of a
+ * {@code TYPE_INT_ARGB} or {@code TYPE_INT_RGB} image and reorders the
+ * channels in place. Read parameters such as source regions are not
+ * supported and are ignored.
+ */
+public class QoiImageReader extends ImageReader {
+
+    private long start = -1;
+    private int width;
+    private int height;
+    private int channels;
+
+    public QoiImageReader(ImageReaderSpi spi) {
+        super(spi);
+    }
+
+    @Override
+    public void setInput(Object input, boolean seekForwardOnly, boolean ignoreMetadata) {
+        super.setInput(input, seekForwardOnly, ignoreMetadata);
+        start = -1;
+    }
+
+    @Override
+    public int getNumImages(boolean allowSearch) {
+        return 1;
+    }
+
+    @Override
+    public int getWidth(int imageIndex) throws IOException {
+        readHeader(imageIndex);
+        return width;
+    }
+
+    @Override
+    public int getHeight(int imageIndex) throws IOException {
+        readHeader(imageIndex);
+        return height;
+    }
+
+    @Override
+    public Iterator<ImageTypeSpecifier> getImageTypes(int imageIndex) throws IOException {
+        readHeader(imageIndex);
+        return Collections.singletonList(ImageTypeSpecifier.createFromBufferedImageType(imageType())).iterator();
+    }
+
+    @Override
+    public IIOMetadata getStreamMetadata() {
+        return null;
+    }
+
+    @Override
+    public IIOMetadata getImageMetadata(int imageIndex) {
+        return null;
+    }
+
+    @Override
+    public BufferedImage read(int imageIndex, ImageReadParam param) throws IOException {
+        readHeader(imageIndex);
+        ImageInputStream stream = (ImageInputStream) input;
+        stream.seek(start);
+        processImageStarted(imageIndex);
+        BufferedImage image = new BufferedImage(width, height, imageType());
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        new StandardDecoder(new ImageInputStreamAdapter(stream)).decodeInto(pixels);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = Integer.rotateRight(pixels[i], 8);
+        }
+        processImageComplete();
+        return image;
+    }
+
+    private int imageType() {
+        return channels == 4 ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+    }
+
+    private void readHeader(int imageIndex) throws IOException {
+        if (imageIndex != 0) {
+            throw new IndexOutOfBoundsException("QOI files hold a single image");
+        }
+        if (input == null) {
+            throw new IllegalStateException("no input set");
+        }
+        if (start >= 0) {
+            return;
+        }
+        ImageInputStream stream = (ImageInputStream) input;
+        long position = stream.getStreamPosition();
+        QoiHeader header;
+        try {
+            header = QoiHeader.read(new ImageInputStreamAdapter(stream));
+        } catch (IOException e) {
+            throw new IIOException(e.getMessage(), e);
+        }
+        width = header.getWidth();
+        height = header.getHeight();
+        channels = header.getChannels();
+        if (width == 0 || height == 0 || (long) width * height > Integer.MAX_VALUE - 8) {
+            throw new IIOException("unsupported QOI image dimensions");
+        }
+        long length = stream.length();
+        if (length >= 0 && !header.fitsIn(length - position - QoiHeader.Size)) {
+            throw new IIOException("truncated QOI image");
+        }
+        stream.seek(position);
+        start = position;
+    }
+
+}
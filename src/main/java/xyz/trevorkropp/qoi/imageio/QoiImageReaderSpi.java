@@ -0,0 +1,56 @@
+package xyz.trevorkropp.qoi.imageio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Locale;
+
+import javax.imageio.ImageReader;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+
+public class QoiImageReaderSpi extends ImageReaderSpi {
+
+    static final String VendorName = "xyz.trevorkropp";
+    static final String Version = "1.0.0";
+    static final String[] Names = { "qoi", "QOI" };
+    static final String[] Suffixes = { "qoi" };
+    static final String[] MimeTypes = { "image/qoi" };
+
+    public QoiImageReaderSpi() {
+        super(VendorName, Version, Names, Suffixes, MimeTypes,
+                QoiImageReader.class.getName(),
+                new Class<?>[] { ImageInputStream.class },
+                new String[] { QoiImageWriterSpi.class.getName() },
+                false, null, null, null, null,
+                false, null, null, null, null);
+    }
+
+    @Override
+    public boolean canDecodeInput(Object source) throws IOException {
+        if (!(source instanceof ImageInputStream)) {
+            return false;
+        }
+        ImageInputStream stream = (ImageInputStream) source;
+        byte[] magic = new byte[4];
+        stream.mark();
+        try {
+            stream.readFully(magic);
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            stream.reset();
+        }
+        return magic[0] == 'q' && magic[1] == 'o' && magic[2] == 'i' && magic[3] == 'f';
+    }
+
+    @Override
+    public ImageReader createReaderInstance(Object extension) {
+        return new QoiImageReader(this);
+    }
+
+    @Override
+    public String getDescription(Locale locale) {
+        return "QOI (Quite OK Image) reader";
+    }
+
+}
@@ -0,0 +1,176 @@
+package xyz.trevorkropp.qoi.imageio;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.RenderedImage;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.stream.ImageOutputStream;
+
+import xyz.trevorkropp.qoi.StreamingEncoder;
+
+/**
+ * Encodes row by row straight from the raster for {@code TYPE_INT_ARGB},
+ * {@code TYPE_INT_RGB} and interleaved 8-bit sRGB byte rasters such as
+ * {@code TYPE_4BYTE_ABGR} and {@code TYPE_3BYTE_BGR}. Other images go through
+ * {@code getRGB} one row at a time. The channel count is 4 only if some pixel
+ * is not fully opaque.
+ */
+public class QoiImageWriter extends ImageWriter {
+
+    public QoiImageWriter(ImageWriterSpi spi) {
+        super(spi);
+    }
+
+    @Override
+    public IIOMetadata getDefaultStreamMetadata(ImageWriteParam param) {
+        return null;
+    }
+
+    @Override
+    public IIOMetadata getDefaultImageMetadata(ImageTypeSpecifier imageType, ImageWriteParam param) {
+        return null;
+    }
+
+    @Override
+    public IIOMetadata convertStreamMetadata(IIOMetadata inData, ImageWriteParam param) {
+        return null;
+    }
+
+    @Override
+    public IIOMetadata convertImageMetadata(IIOMetadata inData, ImageTypeSpecifier imageType,
+            ImageWriteParam param) {
+        return null;
+    }
+
+    @Override
+    public void write(IIOMetadata streamMetadata, IIOImage iioImage, ImageWriteParam param) throws IOException {
+        if (output == null) {
+            throw new IllegalStateException("no output set");
+        }
+        BufferedImage image = toBufferedImage(iioImage.getRenderedImage());
+        RowSource rows = rowSource(image);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] row = new int[width];
+        boolean alpha = false;
+        if (image.getColorModel().hasAlpha()) {
+            for (int y = 0; y < height && !alpha; y++) {
+                rows.read(y, row);
+                for (int x = 0; x < width; x++) {
+                    if ((row[x] & 0xFF) != 0xFF) {
+                        alpha = true;
+                        break;
+                    }
+                }
+            }
+        }
+        processImageStarted(0);
+        StreamingEncoder encoder = new StreamingEncoder(new ImageOutputStreamAdapter((ImageOutputStream) output));
+        encoder.begin(width, height, alpha ? 4 : 3);
+        for (int y = 0; y < height; y++) {
+            rows.read(y, row);
+            encoder.writeRow(row);
+        }
+        encoder.finish();
+        processImageComplete();
+    }
+
+    private static BufferedImage toBufferedImage(RenderedImage rendered) {
+        if (rendered instanceof BufferedImage) {
+            return (BufferedImage) rendered;
+        }
+        ColorModel colorModel = rendered.getColorModel();
+        WritableRaster raster = rendered.copyData(null).createWritableTranslatedChild(0, 0);
+        return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Reads rows as pixels packed {@code 0xRRGGBBAA}.
+     */
+    private interface RowSource {
+
+        void read(int y, int[] row);
+
+    }
+
+    private static RowSource rowSource(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        int width = image.getWidth();
+        int translateX = -raster.getSampleModelTranslateX();
+        int translateY = -raster.getSampleModelTranslateY();
+        int type = image.getType();
+        if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+                && dataBuffer instanceof DataBufferInt && dataBuffer.getNumBanks() == 1) {
+            SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+            int[] data = ((DataBufferInt) dataBuffer).getData();
+            int base = dataBuffer.getOffset() + sampleModel.getOffset(translateX, translateY);
+            int stride = sampleModel.getScanlineStride();
+            if (type == BufferedImage.TYPE_INT_ARGB) {
+                return (y, row) -> {
+                    for (int x = 0, i = base + y * stride; x < width; x++, i++) {
+                        row[x] = Integer.rotateLeft(data[i], 8);
+                    }
+                };
+            }
+            return (y, row) -> {
+                for (int x = 0, i = base + y * stride; x < width; x++, i++) {
+                    row[x] = data[i] << 8 | 0xFF;
+                }
+            };
+        }
+        ColorModel colorModel = image.getColorModel();
+        if (dataBuffer instanceof DataBufferByte && dataBuffer.getNumBanks() == 1
+                && raster.getSampleModel() instanceof ComponentSampleModel
+                && colorModel instanceof ComponentColorModel
+                && colorModel.getColorSpace().isCS_sRGB()
+                && !colorModel.isAlphaPremultiplied()
+                && (raster.getNumBands() == 3 || raster.getNumBands() == 4)) {
+            ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+            byte[] data = ((DataBufferByte) dataBuffer).getData();
+            int stride = sampleModel.getScanlineStride();
+            int pixelStride = sampleModel.getPixelStride();
+            int base = dataBuffer.getOffset() + translateY * stride + translateX * pixelStride;
+            int[] bandOffsets = sampleModel.getBandOffsets();
+            int r = bandOffsets[0];
+            int g = bandOffsets[1];
+            int b = bandOffsets[2];
+            if (raster.getNumBands() == 4) {
+                int a = bandOffsets[3];
+                return (y, row) -> {
+                    for (int x = 0, i = base + y * stride; x < width; x++, i += pixelStride) {
+                        row[x] = (data[i + r] & 0xFF) << 24 | (data[i + g] & 0xFF) << 16
+                                | (data[i + b] & 0xFF) << 8 | (data[i + a] & 0xFF);
+                    }
+                };
+            }
+            return (y, row) -> {
+                for (int x = 0, i = base + y * stride; x < width; x++, i += pixelStride) {
+                    row[x] = (data[i + r] & 0xFF) << 24 | (data[i + g] & 0xFF) << 16
+                            | (data[i + b] & 0xFF) << 8 | 0xFF;
+                }
+            };
+        }
+        return (y, row) -> {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                row[x] = Integer.rotateLeft(row[x], 8);
+            }
+        };
+    }
+
+}
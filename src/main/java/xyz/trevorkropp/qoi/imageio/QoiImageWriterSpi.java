@@ -0,0 +1,41 @@
+package xyz.trevorkropp.qoi.imageio;
+
+import java.util.Locale;
+
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.stream.ImageOutputStream;
+
+public class QoiImageWriterSpi extends ImageWriterSpi {
+
+    public QoiImageWriterSpi() {
+        super(QoiImageReaderSpi.VendorName, QoiImageReaderSpi.Version, QoiImageReaderSpi.Names,
+                QoiImageReaderSpi.Suffixes, QoiImageReaderSpi.MimeTypes,
+                QoiImageWriter.class.getName(),
+                new Class<?>[] { ImageOutputStream.class },
+                new String[] { QoiImageReaderSpi.class.getName() },
+                false, null, null, null, null,
+                false, null, null, null, null);
+    }
+
+    /**
+     * Any image can be written; layouts without a direct path are converted
+     * through {@code getRGB} one row at a time.
+     */
+    @Override
+    public boolean canEncodeImage(ImageTypeSpecifier type) {
+        return type.getNumBands() >= 1;
+    }
+
+    @Override
+    public ImageWriter createWriterInstance(Object extension) {
+        return new QoiImageWriter(this);
+    }
+
+    @Override
+    public String getDescription(Locale locale) {
+        return "QOI (Quite OK Image) writer";
+    }
+
+}
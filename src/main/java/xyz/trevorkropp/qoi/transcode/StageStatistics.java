@@ -0,0 +1,55 @@
+package xyz.trevorkropp.qoi.transcode;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * What one stage of a {@link TranscodePipeline} run did: how many files it
+ * handled, how many bytes or pixels went through it, and how long its threads
+ * were busy. Throughput is given both against wall time, which shows whether
+ * the stage kept up, and against busy time, which shows its speed per thread.
+ */
+@Getter
+@ToString
+public class StageStatistics {
+
+    private final String name;
+    private final int threads;
+    private final long items;
+    private final long units;
+    private final String unitName;
+    private final long busyNanos;
+    private final long elapsedNanos;
+
+    StageStatistics(String name, int threads, long items, long units, String unitName, long busyNanos,
+            long elapsedNanos) {
+        this.name = name;
+        this.threads = threads;
+        this.items = items;
+        this.units = units;
+        this.unitName = unitName;
+        this.busyNanos = busyNanos;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public double getItemsPerSecond() {
+        return elapsedNanos == 0 ? 0 : items * 1e9 / elapsedNanos;
+    }
+
+    public double getUnitsPerSecond() {
+        return elapsedNanos == 0 ? 0 : units * 1e9 / elapsedNanos;
+    }
+
+    public double getUnitsPerBusySecond() {
+        return busyNanos == 0 ? 0 : units * 1e9 / busyNanos;
+    }
+
+    /**
+     * Share of the run during which the stage's threads were working, from 0
+     * to 1. A stage close to 1 is the bottleneck.
+     */
+    public double getUtilization() {
+        return elapsedNanos == 0 ? 0 : (double) busyNanos / threads / elapsedNanos;
+    }
+
+}
@@ -0,0 +1,89 @@
+package xyz.trevorkropp.qoi.transcode;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * Command line entry point for {@link TranscodePipeline}:
+ *
+ * <pre>
+ * java -cp qoi.jar xyz.trevorkropp.qoi.transcode.TranscodeMain SOURCE_DIR TARGET_DIR
+ *         [--read N] [--decode N] [--encode N] [--write N] [--queue N]
+ * </pre>
+ */
+public final class TranscodeMain {
+
+    private TranscodeMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        TranscodePipeline pipeline = new TranscodePipeline();
+        Path source = null;
+        Path target = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("--")) {
+                if (i + 1 == args.length) {
+                    usage("missing value for " + arg);
+                    return;
+                }
+                int value = Integer.parseInt(args[++i]);
+                switch (arg) {
+                    case "--read":
+                        pipeline.setReadThreads(value);
+                        break;
+                    case "--decode":
+                        pipeline.setDecodeThreads(value);
+                        break;
+                    case "--encode":
+                        pipeline.setEncodeThreads(value);
+                        break;
+                    case "--write":
+                        pipeline.setWriteThreads(value);
+                        break;
+                    case "--queue":
+                        pipeline.setQueueCapacity(value);
+                        break;
+                    default:
+                        usage("unknown option " + arg);
+                        return;
+                }
+            } else if (source == null) {
+                source = Paths.get(arg);
+            } else if (target == null) {
+                target = Paths.get(arg);
+            } else {
+                usage("too many arguments");
+                return;
+            }
+        }
+        if (target == null) {
+            usage("need a source and a target directory");
+            return;
+        }
+
+        TranscodeResult result = pipeline.transcodeDirectory(source, target);
+        System.out.printf("converted %d of %d files in %.2f s%n", result.getConverted(), result.getFiles(),
+                result.getElapsedNanos() / 1e9);
+        for (StageStatistics stage : result.getStages()) {
+            System.out.printf("%-7s %2d threads %6d files %10.1f M%s/s %5.1f%% busy%n", stage.getName(),
+                    stage.getThreads(), stage.getItems(), stage.getUnitsPerSecond() / 1e6, stage.getUnitName(),
+                    stage.getUtilization() * 100);
+        }
+        for (Map.Entry<Path, Throwable> failure : result.getFailures().entrySet()) {
+            System.err.println(failure.getKey() + ": " + failure.getValue());
+        }
+        if (!result.getFailures().isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("usage: TranscodeMain SOURCE_DIR TARGET_DIR [--read N] [--decode N] [--encode N]"
+                + " [--write N] [--queue N]");
+        System.exit(2);
+    }
+
+}
@@ -0,0 +1,304 @@
+package xyz.trevorkropp.qoi.transcode;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import lombok.Getter;
+import lombok.Setter;
+import xyz.trevorkropp.qoi.Image;
+import xyz.trevorkropp.qoi.PixelLayout;
+import xyz.trevorkropp.qoi.StandardEncoder;
+
+/**
+ * Converts PNG files (or anything else ImageIO reads) to QOI in four stages:
+ * reading the file, decoding it, encoding QOI and writing the result. Each
+ * stage runs on its own threads and hands files to the next through a
+ * bounded queue, so reading and writing overlap with the CPU-bound stages and
+ * memory stays bounded by the queue capacity. A file that fails in any stage
+ * is reported and skipped.
+ */
+@Getter
+@Setter
+public class TranscodePipeline {
+
+    // PNG decoding costs several times what QOI encoding does, so it gets more threads
+    private int readThreads = 2;
+    private int decodeThreads = Runtime.getRuntime().availableProcessors();
+    private int encodeThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int writeThreads = 2;
+    private int queueCapacity = 16;
+
+    /**
+     * Converts every {@code .png} file under {@code sourceDirectory} to a
+     * {@code .qoi} file at the same relative path under
+     * {@code targetDirectory}.
+     */
+    public TranscodeResult transcodeDirectory(Path sourceDirectory, Path targetDirectory)
+            throws IOException, InterruptedException {
+        List<Path> sources;
+        try (Stream<Path> files = Files.walk(sourceDirectory)) {
+            sources = files.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().toLowerCase().endsWith(".png"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        List<Job> jobs = new ArrayList<>(sources.size());
+        for (Path source : sources) {
+            String name = source.getFileName().toString();
+            Path relative = sourceDirectory.relativize(source);
+            Path target = targetDirectory.resolve(relative).resolveSibling(name.substring(0, name.length() - 4)
+                    + ".qoi");
+            jobs.add(new Job(source, target));
+        }
+        return run(jobs);
+    }
+
+    /**
+     * Converts each source file to the target file at the same position in
+     * {@code targets}.
+     */
+    public TranscodeResult transcode(List<Path> sources, List<Path> targets) throws InterruptedException {
+        if (sources.size() != targets.size()) {
+            throw new IllegalArgumentException("need one target per source");
+        }
+        List<Job> jobs = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            jobs.add(new Job(sources.get(i), targets.get(i)));
+        }
+        return run(jobs);
+    }
+
+    private TranscodeResult run(List<Job> jobs) throws InterruptedException {
+        Map<Path, Throwable> failures = new ConcurrentHashMap<>();
+        BlockingQueue<Job> toRead = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Job> toDecode = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Job> toEncode = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Job> toWrite = new ArrayBlockingQueue<>(queueCapacity);
+
+        Stage read = new Stage("read", readThreads, "bytes", toRead, toDecode, failures) {
+            @Override
+            long process(Job job) throws IOException {
+                job.data = Files.readAllBytes(job.source);
+                return job.data.length;
+            }
+        };
+        Stage decode = new Stage("decode", decodeThreads, "pixels", toDecode, toEncode, failures) {
+            @Override
+            long process(Job job) throws IOException {
+                BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(job.data));
+                job.data = null;
+                if (decoded == null) {
+                    throw new IOException("unsupported image format");
+                }
+                int width = decoded.getWidth();
+                int height = decoded.getHeight();
+                int[] argb = decoded.getRGB(0, 0, width, height, null, 0, width);
+                job.image = new Image(width, height);
+                job.image.setPixels(argb, 0, width, PixelLayout.ARGB);
+                return (long) width * height;
+            }
+        };
+        Stage encode = new Stage("encode", encodeThreads, "pixels", toEncode, toWrite, failures) {
+            @Override
+            long process(Job job) {
+                job.data = StandardEncoder.encodeToByteArray(job.image);
+                long pixels = (long) job.image.getWidth() * job.image.getHeight();
+                job.image = null;
+                return pixels;
+            }
+        };
+        Stage write = new Stage("write", writeThreads, "bytes", toWrite, null, failures) {
+            @Override
+            long process(Job job) throws IOException {
+                Path parent = job.target.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                Files.write(job.target, job.data);
+                long bytes = job.data.length;
+                job.data = null;
+                return bytes;
+            }
+        };
+        Stage[] stages = { read, decode, encode, write };
+        for (int i = 0; i < stages.length - 1; i++) {
+            stages[i].next = stages[i + 1];
+        }
+
+        long started = System.nanoTime();
+        for (Stage stage : stages) {
+            stage.start();
+        }
+        try {
+            for (Job job : jobs) {
+                toRead.put(job);
+            }
+            for (int i = 0; i < read.threads; i++) {
+                toRead.put(Job.End);
+            }
+            write.await();
+        } catch (InterruptedException e) {
+            for (Stage stage : stages) {
+                stage.interrupt();
+            }
+            throw e;
+        }
+        long elapsed = System.nanoTime() - started;
+        List<StageStatistics> statistics = new ArrayList<>(stages.length);
+        for (Stage stage : stages) {
+            statistics.add(stage.statistics(elapsed));
+        }
+        return new TranscodeResult(jobs.size(), elapsed, statistics, failures);
+    }
+
+    private static final class Job {
+
+        static final Job End = new Job(null, null);
+
+        final Path source;
+        final Path target;
+        byte[] data;
+        Image image;
+
+        Job(Path source, Path target) {
+            this.source = source;
+            this.target = target;
+        }
+
+    }
+
+    /**
+     * A pool of threads that take jobs from one queue and put them on the
+     * next. When the last thread of a stage stops, whether at the end of its
+     * input or on an error, it passes one end marker per thread on to the
+     * next stage.
+     */
+    private abstract static class Stage {
+
+        final String name;
+        final int threads;
+        final String unitName;
+        final BlockingQueue<Job> input;
+        final BlockingQueue<Job> output;
+        final Map<Path, Throwable> failures;
+        Stage next;
+
+        final Thread[] workers;
+        final AtomicInteger running;
+        final CountDownLatch done;
+        final LongAdder items = new LongAdder();
+        final LongAdder units = new LongAdder();
+        final LongAdder busyNanos = new LongAdder();
+
+        Stage(String name, int threads, String unitName, BlockingQueue<Job> input, BlockingQueue<Job> output,
+                Map<Path, Throwable> failures) {
+            if (threads < 1) {
+                throw new IllegalArgumentException(name + " needs at least one thread");
+            }
+            this.name = name;
+            this.threads = threads;
+            this.unitName = unitName;
+            this.input = input;
+            this.output = output;
+            this.failures = failures;
+            this.workers = new Thread[threads];
+            this.running = new AtomicInteger(threads);
+            this.done = new CountDownLatch(threads);
+        }
+
+        abstract long process(Job job) throws Exception;
+
+        void start() {
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new Thread(this::work, "qoi-" + name + "-" + (i + 1));
+                workers[i].setDaemon(true);
+                workers[i].start();
+            }
+        }
+
+        private void work() {
+            try {
+                while (true) {
+                    Job job = input.take();
+                    if (job == Job.End) {
+                        break;
+                    }
+                    long started = System.nanoTime();
+                    try {
+                        units.add(process(job));
+                        items.increment();
+                    } catch (Throwable e) {
+                        // errors such as running out of memory on one huge image only fail that file
+                        job.data = null;
+                        job.image = null;
+                        failures.put(job.source, e);
+                        continue;
+                    } finally {
+                        busyNanos.add(System.nanoTime() - started);
+                    }
+                    if (output != null) {
+                        output.put(job);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // even a dying worker must hand on the end, or the stages after it wait forever
+                try {
+                    endOutput();
+                } finally {
+                    done.countDown();
+                }
+            }
+        }
+
+        private void endOutput() {
+            if (running.decrementAndGet() != 0 || output == null) {
+                return;
+            }
+            try {
+                for (int i = 0; i < next.threads; i++) {
+                    output.put(Job.End);
+                }
+            } catch (InterruptedException e) {
+                // interrupted means cancelled, and every stage is being interrupted
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void await() throws InterruptedException {
+            done.await();
+        }
+
+        void interrupt() {
+            for (Thread worker : workers) {
+                if (worker != null) {
+                    worker.interrupt();
+                }
+            }
+        }
+
+        StageStatistics statistics(long elapsedNanos) {
+            return new StageStatistics(name, threads, items.sum(), units.sum(), unitName, busyNanos.sum(),
+                    elapsedNanos);
+        }
+
+    }
+
+}
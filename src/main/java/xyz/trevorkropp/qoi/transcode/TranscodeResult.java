@@ -0,0 +1,32 @@
+package xyz.trevorkropp.qoi.transcode;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+
+@Getter
+public class TranscodeResult {
+
+    private final long files;
+    private final long elapsedNanos;
+    private final List<StageStatistics> stages;
+    private final Map<Path, Throwable> failures;
+
+    TranscodeResult(long files, long elapsedNanos, List<StageStatistics> stages, Map<Path, Throwable> failures) {
+        this.files = files;
+        this.elapsedNanos = elapsedNanos;
+        this.stages = Collections.unmodifiableList(stages);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Files that were written; failed files are in {@link #getFailures()}.
+     */
+    public long getConverted() {
+        return files - failures.size();
+    }
+
+}
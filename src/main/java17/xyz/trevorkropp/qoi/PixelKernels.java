@@ -0,0 +1,72 @@
+package xyz.trevorkropp.qoi;
+
+import java.util.Arrays;
+
+/**
+ * Java 17 version of the kernels, selected by the multi-release JAR. It uses
+ * {@link VectorKernels} when the {@code jdk.incubator.vector} module has been
+ * added to the runtime (for example with
+ * {@code --add-modules jdk.incubator.vector}) and {@link ScalarKernels}
+ * otherwise. Setting the system property {@code xyz.trevorkropp.qoi.scalar}
+ * to {@code true} forces the scalar path.
+ */
+final class PixelKernels {
+
+    private static final boolean Vectorized = vectorApiAvailable();
+
+    private PixelKernels() {
+    }
+
+    private static boolean vectorApiAvailable() {
+        if (Boolean.getBoolean("xyz.trevorkropp.qoi.scalar")) {
+            return false;
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            return VectorKernels.isUseful();
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    static boolean isVectorized() {
+        return Vectorized;
+    }
+
+    /**
+     * Counts how many pixels starting at {@code from} equal {@code value}.
+     */
+    static int runLength(int[] pixels, int from, int to, int value) {
+        if (Vectorized) {
+            return VectorKernels.runLength(pixels, from, to, value);
+        }
+        return ScalarKernels.runLength(pixels, from, to, value);
+    }
+
+    /**
+     * Counts how many pixels starting at {@code from} are the same in
+     * {@code a} and {@code b}.
+     */
+    static int matchLength(int[] a, int[] b, int from, int to) {
+        // an intrinsic on every Java 17 runtime, with or without the Vector API
+        int mismatch = Arrays.mismatch(a, from, to, b, from, to);
+        return mismatch < 0 ? to - from : mismatch;
+    }
+
+    /**
+     * Picks the chunk each pixel would get if it were neither part of a run
+     * nor in the index cache, which only depends on the pixel before it.
+     * Codes hold the op in the top byte, the index hash below it and the diff
+     * or luma chunk bytes in the low 16 bits.
+     */
+    static void classify(int[] pixels, int from, int to, int prev, int[] codes, int codesOffset) {
+        if (Vectorized) {
+            VectorKernels.classify(pixels, from, to, prev, codes, codesOffset);
+        } else {
+            ScalarKernels.classify(pixels, from, to, prev, codes, codesOffset);
+        }
+    }
+
+}
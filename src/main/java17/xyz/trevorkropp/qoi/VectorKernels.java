@@ -0,0 +1,97 @@
+package xyz.trevorkropp.qoi;
+
+import static jdk.incubator.vector.VectorOperators.EQ;
+import static jdk.incubator.vector.VectorOperators.LE;
+import static jdk.incubator.vector.VectorOperators.LSHL;
+import static jdk.incubator.vector.VectorOperators.LSHR;
+import static jdk.incubator.vector.VectorOperators.NE;
+import static xyz.trevorkropp.qoi.ChunkEncoder.OpDiff;
+import static xyz.trevorkropp.qoi.ChunkEncoder.OpLuma;
+import static xyz.trevorkropp.qoi.ChunkEncoder.OpRGB;
+import static xyz.trevorkropp.qoi.ChunkEncoder.OpRGBA;
+import static xyz.trevorkropp.qoi.ChunkEncoder.OpRun;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API versions of the {@link ScalarKernels}, processing as many pixels
+ * per step as the preferred species holds. Only loaded when
+ * {@code jdk.incubator.vector} is present.
+ */
+final class VectorKernels {
+
+    private static final VectorSpecies<Integer> Species = IntVector.SPECIES_PREFERRED;
+
+    private VectorKernels() {
+    }
+
+    /**
+     * Narrow vectors do not pay for their setup over the scalar loops.
+     */
+    static boolean isUseful() {
+        return Species.length() >= 4;
+    }
+
+    static int runLength(int[] pixels, int from, int to, int value) {
+        int i = from;
+        int upper = from + Species.loopBound(to - from);
+        for (; i < upper; i += Species.length()) {
+            VectorMask<Integer> different = IntVector.fromArray(Species, pixels, i).compare(NE, value);
+            if (different.anyTrue()) {
+                return i + different.firstTrue() - from;
+            }
+        }
+        return i - from + ScalarKernels.runLength(pixels, i, to, value);
+    }
+
+    static void classify(int[] pixels, int from, int to, int prev, int[] codes, int codesOffset) {
+        if (from >= to) {
+            return;
+        }
+        // the first pixel's predecessor may not be in the array
+        ScalarKernels.classify(pixels, from, from + 1, prev, codes, codesOffset);
+        int i = from + 1;
+        int c = codesOffset + 1;
+        int upper = i + Species.loopBound(to - i);
+        IntVector rgb = IntVector.broadcast(Species, OpRGB << 24);
+        IntVector rgba = IntVector.broadcast(Species, OpRGBA << 24);
+        IntVector run = IntVector.broadcast(Species, OpRun << 24);
+        for (; i < upper; i += Species.length(), c += Species.length()) {
+            IntVector pixel = IntVector.fromArray(Species, pixels, i);
+            IntVector previous = IntVector.fromArray(Species, pixels, i - 1);
+            IntVector r = pixel.lanewise(LSHR, 24);
+            IntVector g = pixel.lanewise(LSHR, 16).and(0xFF);
+            IntVector b = pixel.lanewise(LSHR, 8).and(0xFF);
+            IntVector a = pixel.and(0xFF);
+            IntVector dr = r.sub(previous.lanewise(LSHR, 24));
+            IntVector dg = g.sub(previous.lanewise(LSHR, 16).and(0xFF));
+            IntVector db = b.sub(previous.lanewise(LSHR, 8).and(0xFF));
+
+            IntVector index = r.mul(3).add(g.mul(5)).add(b.mul(7)).add(a.mul(11)).and(0b111111);
+
+            IntVector diffR = dr.add(2).and(0xFF);
+            IntVector diffG = dg.add(2).and(0xFF);
+            IntVector diffB = db.add(2).and(0xFF);
+            VectorMask<Integer> isDiff = diffR.compare(LE, 3).and(diffG.compare(LE, 3)).and(diffB.compare(LE, 3));
+            IntVector diff = diffR.lanewise(LSHL, 4).or(diffG.lanewise(LSHL, 2)).or(diffB)
+                    .or(OpDiff << 24 | 0b01 << 6);
+
+            IntVector lumaG = dg.add(32).and(0xFF);
+            IntVector lumaR = dr.sub(dg).add(8).and(0xFF);
+            IntVector lumaB = db.sub(dg).add(8).and(0xFF);
+            VectorMask<Integer> isLuma = lumaG.compare(LE, 63).and(lumaR.compare(LE, 15))
+                    .and(lumaB.compare(LE, 15));
+            IntVector luma = lumaG.or(0b10000000).lanewise(LSHL, 8).or(lumaR.lanewise(LSHL, 4)).or(lumaB)
+                    .or(OpLuma << 24);
+
+            IntVector code = rgb.blend(luma, isLuma).blend(diff, isDiff);
+            code = rgba.blend(code, a.compare(EQ, previous.and(0xFF)));
+            code = code.blend(run, pixel.compare(EQ, previous));
+            code.or(index.lanewise(LSHL, 16)).intoArray(codes, c);
+        }
+        ScalarKernels.classify(pixels, i, to, pixels[i - 1], codes, c);
+    }
+
+}
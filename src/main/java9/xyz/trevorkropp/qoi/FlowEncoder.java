@@ -0,0 +1,168 @@
+package xyz.trevorkropp.qoi;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes an encoded image as a stream of buffers, for reactive HTTP
+ * stacks and other {@link Flow} consumers. Each subscriber gets the whole
+ * image, encoded for it on the executor one block per requested buffer, so
+ * the first bytes are out after one block and encoding pauses whenever the
+ * subscriber has no outstanding demand. Buffers are {@code blockSize} bytes,
+ * taken from a pool; a subscriber that is done with one can return it with
+ * {@link #release(ByteBuffer)}, and buffers that are not returned are left to
+ * the garbage collector. Only present on Java 9 and later.
+ */
+public class FlowEncoder implements Flow.Publisher<ByteBuffer> {
+
+    // buffers kept for reuse; more than a few per subscriber would only hold memory
+    private static final int MaxPooledBlocks = 16;
+
+    private final Image image;
+    private final Executor executor;
+    private final int blockSize;
+    private final ConcurrentLinkedQueue<byte[]> blocks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    public FlowEncoder(Image image) {
+        this(image, ForkJoinPool.commonPool(), StandardEncoder.BlockSize);
+    }
+
+    public FlowEncoder(Image image, Executor executor, int blockSize) {
+        if (blockSize < BlockEncoder.MinBlockSize) {
+            throw new IllegalArgumentException("block size must be at least " + BlockEncoder.MinBlockSize
+                    + " bytes: " + blockSize);
+        }
+        this.image = image;
+        this.executor = executor;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        Emission emission = new Emission(subscriber);
+        subscriber.onSubscribe(emission);
+    }
+
+    /**
+     * Hands a buffer this encoder published back for reuse. The caller must
+     * not touch it afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        if (!buffer.hasArray() || buffer.arrayOffset() != 0 || buffer.array().length != blockSize) {
+            return;
+        }
+        if (pooled.incrementAndGet() <= MaxPooledBlocks) {
+            blocks.offer(buffer.array());
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    private byte[] takeBlock() {
+        byte[] block = blocks.poll();
+        if (block == null) {
+            return new byte[blockSize];
+        }
+        pooled.decrementAndGet();
+        return block;
+    }
+
+    /**
+     * One subscription. Signals are only sent from {@link #run()}, which the
+     * work counter keeps to one thread at a time; {@code request} and
+     * {@code cancel} only record what happened and schedule it.
+     */
+    private final class Emission implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable badRequest;
+
+        private final BlockEncoder encoder = new BlockEncoder(image);
+        private boolean done;
+
+        Emission(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                long current;
+                long added;
+                do {
+                    current = demand.get();
+                    added = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, added));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void schedule() {
+            if (work.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                emit();
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            while (!done && !cancelled) {
+                if (badRequest != null) {
+                    done = true;
+                    subscriber.onError(badRequest);
+                    return;
+                }
+                if (demand.get() == 0) {
+                    return;
+                }
+                ByteBuffer data;
+                try {
+                    byte[] block = takeBlock();
+                    data = ByteBuffer.wrap(block, 0, encoder.encode(block));
+                } catch (Throwable e) {
+                    done = true;
+                    subscriber.onError(e);
+                    return;
+                }
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                subscriber.onNext(data);
+                if (encoder.isFinished()) {
+                    done = true;
+                    if (!cancelled) {
+                        subscriber.onComplete();
+                    }
+                }
+            }
+        }
+
+    }
+
+}
@@ -3,21 +3,78 @@ package xyz.trevorkropp.test.qoi;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.AsynchronousByteChannel;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import xyz.trevorkropp.qoi.AsyncEncoder;
+import xyz.trevorkropp.qoi.BatchEncoder;
+import xyz.trevorkropp.qoi.EncodedImageCache;
+import xyz.trevorkropp.qoi.EncodeStatistics;
+import xyz.trevorkropp.qoi.EncodeStatisticsCollector;
 import xyz.trevorkropp.qoi.Image;
+import xyz.trevorkropp.qoi.LargeImage;
+import xyz.trevorkropp.qoi.ParallelEncoder;
+import xyz.trevorkropp.qoi.PixelLayout;
+import xyz.trevorkropp.qoi.QoiHeader;
+import xyz.trevorkropp.qoi.QoiIndex;
+import xyz.trevorkropp.qoi.QoizInputStream;
+import xyz.trevorkropp.qoi.QoizOutputStream;
 import xyz.trevorkropp.qoi.RGBA;
+import xyz.trevorkropp.qoi.SequenceDecoder;
+import xyz.trevorkropp.qoi.SequenceEncoder;
+import xyz.trevorkropp.qoi.SizeEstimate;
+import xyz.trevorkropp.qoi.StandardDecoder;
 import xyz.trevorkropp.qoi.StandardEncoder;
+import xyz.trevorkropp.qoi.StreamingEncoder;
+import xyz.trevorkropp.qoi.ThumbnailFilter;
+import xyz.trevorkropp.qoi.transcode.StageStatistics;
+import xyz.trevorkropp.qoi.transcode.TranscodePipeline;
+import xyz.trevorkropp.qoi.transcode.TranscodeResult;
 
 public class QoiTest {
 
@@ -294,6 +351,55 @@ public class QoiTest {
         assertArrayEquals(expected, actual);
     }
 
+    @Test
+    public void shouldEncodeToByteArrayLikeStream() throws IOException {
+        Image image = new Image(300, 300);
+        Random random = new Random(42);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setPixel(x, y, random.nextInt());
+            }
+        }
+        ByteArrayOutputStream bab = new ByteArrayOutputStream();
+        StandardEncoder.encode(bab, image);
+        byte[] expected = bab.toByteArray();
+
+        byte[] actual = StandardEncoder.encodeToByteArray(image);
+
+        assertArrayEquals(expected, actual);
+        assertTrue(actual.length <= StandardEncoder.maxEncodedSize(image));
+    }
+
+    @Test
+    public void shouldEncodeWorstCaseToByteArray() throws IOException {
+        Image empty = new Image(0, 0);
+        Image single = new Image(1, 1, 0x11223344);
+        Image rgba = new Image(2, 1);
+        rgba.setPixel(0, 0, 0x11223344);
+        rgba.setPixel(1, 0, 0x55667788);
+        for (Image image : new Image[] { empty, single, rgba }) {
+            ByteArrayOutputStream bab = new ByteArrayOutputStream();
+            StandardEncoder.encode(bab, image);
+
+            byte[] actual = StandardEncoder.encodeToByteArray(image);
+
+            assertArrayEquals(bab.toByteArray(), actual);
+            assertEquals(StandardEncoder.maxEncodedSize(image), actual.length);
+        }
+    }
+
+    @Test
+    public void shouldStorePixelsPacked() {
+        Image image = new Image(10, 10);
+        image.setAt(3, 4, new RGBA(1, 2, 3, 255));
+        image.setPixel(5, 6, 0x80FF1040);
+
+        assertEquals(0x010203FF, image.getPixel(3, 4));
+        assertEquals(new RGBA(128, 255, 16, 64), image.getAt(5, 6));
+        assertEquals(0x000000FF, image.getPixel(0, 0));
+        assertTrue(image.isAlpha());
+    }
+
     @Test
     public void shouldEncodeCorrectly10x10() throws IOException {
         byte[] expected = Files.readAllBytes(Paths.get(fileDirectory + "10x10.qoi"));
@@ -322,4 +428,1259 @@ public class QoiTest {
         assertArrayEquals(expected, actual);
     }
 
+    @Test
+    public void shouldStreamRowsLikeStandardEncoder() throws IOException {
+        byte[] expected = Files.readAllBytes(Paths.get(fileDirectory + "scribbles.qoi"));
+        Image image = Util.readToImage(Paths.get(fileDirectory + "scribbles.png"));
+        ByteArrayOutputStream bab = new ByteArrayOutputStream();
+        StreamingEncoder encoder = new StreamingEncoder(bab);
+        int[] row = new int[image.getWidth()];
+
+        encoder.begin(image.getWidth(), image.getHeight(), 4);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                row[x] = image.getPixel(x, y);
+            }
+            encoder.writeRow(row);
+        }
+        encoder.finish();
+
+        assertArrayEquals(expected, bab.toByteArray());
+    }
+
+    @Test
+    public void shouldStreamByteRows() throws IOException {
+        Image image = new Image(3, 2);
+        image.setAt(1, 0, new RGBA(10, 20, 30, 255));
+        image.setAt(2, 1, new RGBA(200, 100, 0, 255));
+        byte[] expected = StandardEncoder.encodeToByteArray(image);
+        ByteArrayOutputStream bab = new ByteArrayOutputStream();
+        StreamingEncoder encoder = new StreamingEncoder(bab);
+
+        encoder.begin(3, 2, 3);
+        encoder.writeRow(new byte[] { 0, 0, 0, 10, 20, 30, 0, 0, 0 });
+        encoder.writeRow(new byte[] { 0, 0, 0, 0, 0, 0, (byte) 200, 100, 0 });
+        encoder.finish();
+
+        assertArrayEquals(expected, bab.toByteArray());
+    }
+
+    @Test
+    public void shouldRequireAllRowsBeforeFinish() throws IOException {
+        StreamingEncoder encoder = new StreamingEncoder(new ByteArrayOutputStream());
+        encoder.begin(2, 2, 4);
+        encoder.writeRow(new int[2]);
+
+        assertThrows(IllegalStateException.class, encoder::finish);
+    }
+
+    @Test
+    public void shouldEncodeInParallelLikeStandardEncoder() throws IOException {
+        Image image = new Image(1100, 1000);
+        Random random = new Random(3);
+        int pixel = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                switch (random.nextInt(6)) {
+                    case 0:
+                        pixel = random.nextInt();
+                        break;
+                    case 1:
+                        pixel += 0x01010100;
+                        break;
+                    case 2:
+                        pixel ^= 0x10000000;
+                        break;
+                    default:
+                        break;
+                }
+                image.setPixel(x, y, pixel);
+            }
+        }
+        byte[] expected = StandardEncoder.encodeToByteArray(image);
+        ByteArrayOutputStream bab = new ByteArrayOutputStream();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelEncoder.encode(bab, image, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertArrayEquals(expected, bab.toByteArray());
+    }
+
+    @Test
+    public void shouldReuseEncoderForAnotherImage() throws IOException {
+        Image first = new Image(100, 200);
+        first.setAt(0, 0, new RGBA(0, 0, 0, 128));
+        Image second = Util.readToImage(Paths.get(fileDirectory + "10x10.png"));
+        ByteArrayOutputStream bab = new ByteArrayOutputStream();
+        StandardEncoder encoder = new StandardEncoder();
+        encoder.reset(bab, first);
+        encoder.encode();
+        bab.reset();
+
+        encoder.reset(bab, second);
+        encoder.encode();
+
+        assertArrayEquals(Files.readAllBytes(Paths.get(fileDirectory + "10x10.qoi")), bab.toByteArray());
+    }
+
+    @Test
+    public void shouldEncodeBatchConcurrently() throws Exception {
+        List<Image> images = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Image image = new Image(50 + i, 40);
+            image.setPixel(i, i, 0x11223344 * i);
+            images.add(image);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BatchEncoder batch = new BatchEncoder(executor);
+
+            List<CompletableFuture<byte[]>> results = batch.submitAll(images);
+
+            for (int i = 0; i < images.size(); i++) {
+                assertArrayEquals(StandardEncoder.encodeToByteArray(images.get(i)), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldDecodeCorrectly10x10() throws IOException {
+        Image expected = Util.readToImage(Paths.get(fileDirectory + "10x10.png"));
+
+        Image actual = StandardDecoder.decode(Files.newInputStream(Paths.get(fileDirectory + "10x10.qoi")));
+
+        assertImageEquals(expected, actual);
+    }
+
+    @Test
+    public void shouldDecodeCorrectlyScribblesWithAlpha() throws IOException {
+        Image expected = Util.readToImage(Paths.get(fileDirectory + "scribbles.png"));
+
+        Image actual = StandardDecoder.decode(Files.readAllBytes(Paths.get(fileDirectory + "scribbles.qoi")));
+
+        assertImageEquals(expected, actual);
+    }
+
+    @Test
+    public void shouldDecodeWhatWasEncoded() throws IOException {
+        Image expected = new Image(300, 300);
+        Random random = new Random(7);
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int pixel = random.nextInt(4) == 0 ? random.nextInt() : expected.getPixel(Math.max(x - 1, 0), y);
+                expected.setPixel(x, y, pixel);
+            }
+        }
+        ByteArrayOutputStream bab = new ByteArrayOutputStream();
+        StandardEncoder.encode(bab, expected);
+
+        Image actual = StandardDecoder.decode(new ByteArrayInputStream(bab.toByteArray()));
+
+        assertImageEquals(expected, actual);
+    }
+
+    @Test
+    public void shouldEncodeAndDecodeFiles(@TempDir Path directory) throws IOException {
+        Image expected = Util.readToImage(Paths.get(fileDirectory + "scribbles.png"));
+        Path path = directory.resolve("scribbles.qoi");
+
+        StandardEncoder.encode(path, expected);
+        Image actual = StandardDecoder.decode(path);
+
+        assertArrayEquals(Files.readAllBytes(Paths.get(fileDirectory + "scribbles.qoi")), Files.readAllBytes(path));
+        assertImageEquals(expected, actual);
+    }
+
+    @Test
+    public void shouldDecodeDirectByteBuffer() throws IOException {
+        byte[] data = Files.readAllBytes(Paths.get(fileDirectory + "10x10.qoi"));
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length + 3);
+        direct.put(data).put(new byte[] { 1, 2, 3 }).flip();
+
+        Image actual = StandardDecoder.decode(direct);
+
+        assertImageEquals(Util.readToImage(Paths.get(fileDirectory + "10x10.png")), actual);
+        assertEquals(3, direct.remaining());
+    }
+
+    @Test
+    public void shouldReadThroughImageIO() throws IOException {
+        BufferedImage expected = ImageIO.read(Paths.get(fileDirectory + "scribbles.png").toFile());
+
+        BufferedImage actual = ImageIO.read(Paths.get(fileDirectory + "scribbles.qoi").toFile());
+
+        assertNotNull(actual);
+        assertEquals(BufferedImage.TYPE_INT_ARGB, actual.getType());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void shouldWriteThroughImageIO() throws IOException {
+        for (String name : new String[] { "10x10", "scribbles" }) {
+            byte[] expected = Files.readAllBytes(Paths.get(fileDirectory + name + ".qoi"));
+            BufferedImage png = ImageIO.read(Paths.get(fileDirectory + name + ".png").toFile());
+            BufferedImage argb = new BufferedImage(png.getWidth(), png.getHeight(), BufferedImage.TYPE_INT_ARGB);
+            int[] rgb = png.getRGB(0, 0, png.getWidth(), png.getHeight(), null, 0, png.getWidth());
+            argb.setRGB(0, 0, png.getWidth(), png.getHeight(), rgb, 0, png.getWidth());
+
+            for (BufferedImage image : new BufferedImage[] { png, argb }) {
+                ByteArrayOutputStream bab = new ByteArrayOutputStream();
+                assertTrue(ImageIO.write(image, "qoi", bab));
+                assertArrayEquals(expected, bab.toByteArray(), name + " as type " + image.getType());
+            }
+        }
+    }
+
+    @Test
+    public void shouldProbeHeader() throws IOException {
+        QoiHeader expected = new QoiHeader(640, 400, 4, 0);
+        Path path = Paths.get(fileDirectory + "scribbles.qoi");
+        byte[] data = Files.readAllBytes(path);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        assertEquals(expected, QoiHeader.read(path));
+        assertEquals(expected, QoiHeader.read(new ByteArrayInputStream(data)));
+        assertEquals(expected, QoiHeader.read(buffer));
+        assertEquals(QoiHeader.Size, buffer.position());
+        assertTrue(expected.hasAlpha());
+    }
+
+    @Test
+    public void shouldRejectBadHeader() {
+        byte[] data = StandardEncoder.encodeToByteArray(new Image(2, 2));
+        data[12] = 5;
+
+        assertThrows(IOException.class, () -> QoiHeader.read(ByteBuffer.wrap(data)));
+        assertThrows(EOFException.class, () -> QoiHeader.read(new ByteArrayInputStream(data, 0, 10)));
+    }
+
+    @Test
+    public void shouldRejectBadMagic() {
+        byte[] data = StandardEncoder.encodeToByteArray(new Image(2, 2));
+        data[0] = 'x';
+
+        assertThrows(IOException.class, () -> StandardDecoder.decode(data));
+    }
+
+    @Test
+    public void shouldRejectTruncatedImage() {
+        Image image = new Image(10, 10);
+        image.setPixel(5, 5, 0x12345678);
+        byte[] data = StandardEncoder.encodeToByteArray(image);
+        byte[] truncated = Arrays.copyOf(data, 20);
+
+        assertThrows(EOFException.class, () -> StandardDecoder.decode(new ByteArrayInputStream(truncated)));
+    }
+
+    @Test
+    public void shouldRejectHeaderLargerThanItsData(@TempDir Path directory) throws IOException {
+        // 40000x40000 would take 6.4 GB of pixels; the empty body rules it out before anything is allocated
+        byte[] hostile = Arrays.copyOf(StandardEncoder.encodeToByteArray(new Image(0, 0)), QoiHeader.Size);
+        ByteBuffer.wrap(hostile).putInt(4, 40000).putInt(8, 40000);
+        ByteBuffer direct = ByteBuffer.allocateDirect(hostile.length).put(hostile);
+        direct.flip();
+
+        assertThrows(EOFException.class, () -> StandardDecoder.decode(hostile));
+        assertThrows(EOFException.class, () -> StandardDecoder.decode(ByteBuffer.wrap(hostile)));
+        assertThrows(EOFException.class, () -> StandardDecoder.decode(direct));
+        Path file = directory.resolve("hostile.qoi");
+        Files.write(file, hostile);
+        assertThrows(IOException.class, () -> ImageIO.read(file.toFile()));
+    }
+
+    @Test
+    public void shouldReportEncodeStatistics() throws IOException {
+        Image image = Util.readToImage(Paths.get(fileDirectory + "scribbles.png"));
+        List<EncodeStatistics> reported = new ArrayList<>();
+        ByteArrayOutputStream bab = new ByteArrayOutputStream();
+        StandardEncoder encoder = new StandardEncoder(bab, image);
+        encoder.setListener(reported::add);
+        encoder.encode();
+
+        assertEquals(1, reported.size());
+        EncodeStatistics statistics = reported.get(0);
+        assertEquals(640L * 400, statistics.getPixels());
+        assertEquals(bab.size(), statistics.getEncodedBytes());
+        assertEquals(statistics.getEncodedBytes(), 14 + 8 + statistics.getRunBytes() + statistics.getIndexBytes()
+                + statistics.getDiffBytes() + statistics.getLumaBytes() + statistics.getRgbBytes()
+                + statistics.getRgbaBytes());
+        assertTrue(statistics.getRunPixels() >= statistics.getRunChunks());
+        assertTrue(statistics.getIndexHitRate() > 0 && statistics.getIndexHitRate() < 1);
+
+        StreamingEncoder streaming = new StreamingEncoder(new ByteArrayOutputStream());
+        streaming.setListener(reported::add);
+        streaming.begin(image.getWidth(), image.getHeight(), 4);
+        int[] row = new int[image.getWidth()];
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < row.length; x++) {
+                row[x] = image.getPixel(x, y);
+            }
+            streaming.writeRow(row);
+        }
+        streaming.finish();
+
+        assertEquals(2, reported.size());
+        assertEquals(statistics.getRunChunks(), reported.get(1).getRunChunks());
+        assertEquals(statistics.getIndexChunks(), reported.get(1).getIndexChunks());
+        assertEquals(statistics.getLumaChunks(), reported.get(1).getLumaChunks());
+        assertEquals(statistics.getEncodedBytes(), reported.get(1).getEncodedBytes());
+    }
+
+    @Test
+    public void shouldCollectStatisticsOverJmx() throws IOException, JMException {
+        Image image = Util.readToImage(Paths.get(fileDirectory + "10x10.png"));
+        EncodeStatisticsCollector collector = new EncodeStatisticsCollector();
+        ObjectName name = collector.register(new ObjectName(EncodeStatisticsCollector.DefaultObjectName + ",name=test"));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            StandardEncoder encoder = new StandardEncoder(new ByteArrayOutputStream(), image);
+            encoder.setListener(collector);
+            encoder.encode();
+            encoder.encode();
+
+            assertEquals(2L, server.getAttribute(name, "Encodes"));
+            assertEquals(200L, server.getAttribute(name, "Pixels"));
+            assertEquals(2L * StandardEncoder.encodeToByteArray(image).length,
+                    server.getAttribute(name, "EncodedBytes"));
+
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, collector.getEncodes());
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void shouldDecodeRegionFromCheckpoint() throws IOException {
+        // long runs cross many checkpoints, including runs longer than a chunk
+        Image image = new Image(50, 300);
+        for (int y = 0; y < image.getHeight(); y += 13) {
+            image.setPixel(y % 50, y, 0x10203040 + y);
+        }
+        ByteArrayOutputStream bab = new ByteArrayOutputStream();
+        QoiIndex index = new StandardEncoder(bab, image).encodeWithIndex(7);
+        byte[] data = bab.toByteArray();
+
+        assertArrayEquals(StandardEncoder.encodeToByteArray(image), data);
+        assertEquals(43, index.getCheckpointCount());
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        for (int y = 0; y < image.getHeight(); y += 11) {
+            int height = Math.min(17, image.getHeight() - y);
+            Image region = StandardDecoder.decodeRegion(buffer, index, 3, y, 40, height);
+            for (int r = 0; r < height; r++) {
+                for (int x = 0; x < 40; x++) {
+                    assertEquals(image.getPixel(x + 3, y + r), region.getPixel(x, r), "pixel at " + x + "," + r);
+                }
+            }
+        }
+        Image rows = StandardDecoder.decodeRows(buffer, index, 100, 110);
+        assertEquals(50, rows.getWidth());
+        assertEquals(10, rows.getHeight());
+        assertEquals(0, buffer.position());
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> StandardDecoder.decodeRegion(buffer, index, 10, 0, 41, 1));
+    }
+
+    @Test
+    public void shouldDecodeEmptyRegionWithIndex(@TempDir Path directory) throws IOException {
+        Image empty = new Image(5, 0);
+        Path path = directory.resolve("empty.qoi");
+        Path indexPath = directory.resolve("empty.qoix");
+        StandardEncoder.encode(path, empty, indexPath, 4);
+        QoiIndex index = QoiIndex.read(indexPath);
+        assertEquals(0, index.getCheckpointCount());
+        Image region = StandardDecoder.decodeRegion(path, index, 0, 0, 5, 0);
+        assertEquals(5, region.getWidth());
+        assertEquals(0, region.getHeight());
+        region = StandardDecoder.decodeRegion(ByteBuffer.wrap(Files.readAllBytes(path)), index, 2, 0, 3, 0);
+        assertEquals(0, region.getHeight());
+
+        // an empty region below an image of whole intervals starts past the last checkpoint
+        Image image = new Image(3, 8);
+        ByteArrayOutputStream bab = new ByteArrayOutputStream();
+        QoiIndex rows = new StandardEncoder(bab, image).encodeWithIndex(4);
+        assertEquals(2, rows.getCheckpointCount());
+        assertEquals(0, StandardDecoder.decodeRegion(ByteBuffer.wrap(bab.toByteArray()), rows, 0, 8, 3, 0)
+                .getHeight());
+        Path bottomPath = directory.resolve("bottom.qoi");
+        Files.write(bottomPath, bab.toByteArray());
+        assertEquals(0, StandardDecoder.decodeRegion(bottomPath, rows, 0, 8, 3, 0).getHeight());
+    }
+
+    @Test
+    public void shouldDecodeRegionOfFileWithSidecarIndex(@TempDir Path directory) throws IOException {
+        Image image = Util.readToImage(Paths.get(fileDirectory + "scribbles.png"));
+        Path path = directory.resolve("scribbles.qoi");
+        Path indexPath = directory.resolve("scribbles.qoix");
+        StandardEncoder.encode(path, image, indexPath, 16);
+
+        assertArrayEquals(Files.readAllBytes(Paths.get(fileDirectory + "scribbles.qoi")), Files.readAllBytes(path));
+        QoiIndex index = QoiIndex.read(indexPath);
+        assertEquals(25, index.getCheckpointCount());
+        Image region = StandardDecoder.decodeRegion(path, index, 200, 250, 100, 40);
+        for (int y = 0; y < 40; y++) {
+            for (int x = 0; x < 100; x++) {
+                assertEquals(image.getPixel(x + 200, y + 250), region.getPixel(x, y), "pixel at " + x + "," + y);
+            }
+        }
+        Image bottom = StandardDecoder.decodeRows(path, index, 390, 400);
+        for (int x = 0; x < 640; x++) {
+            assertEquals(image.getPixel(x, 399), bottom.getPixel(x, 9));
+        }
+    }
+
+    @Test
+    public void shouldEncodeAsynchronouslyToFileChannel(@TempDir Path directory) throws Exception {
+        Image image = new Image(400, 300);
+        Random random = new Random(5);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setPixel(x, y, x < 100 ? 0x336699FF : random.nextInt());
+            }
+        }
+        byte[] expected = StandardEncoder.encodeToByteArray(image);
+        Path path = directory.resolve("noise.qoi");
+        AsyncEncoder encoder = new AsyncEncoder();
+
+        try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            long written = encoder.encodeAsync(image, channel, 0).get();
+            assertEquals(expected.length, written);
+        }
+
+        assertArrayEquals(expected, Files.readAllBytes(path));
+    }
+
+    @Test
+    public void shouldEncodeAsynchronouslyToByteChannelWithPartialWrites() throws Exception {
+        Image image = Util.readToImage(Paths.get(fileDirectory + "scribbles.png"));
+        byte[] expected = Files.readAllBytes(Paths.get(fileDirectory + "scribbles.qoi"));
+        ExecutorService io = Executors.newSingleThreadExecutor();
+        ByteArrayOutputStream bab = new ByteArrayOutputStream();
+        AsynchronousByteChannel channel = new AsynchronousByteChannel() {
+
+            @Override
+            public <A> void write(ByteBuffer src, A attachment, CompletionHandler<Integer, ? super A> handler) {
+                io.execute(() -> {
+                    int count = Math.min(src.remaining(), 1000);
+                    byte[] bytes = new byte[count];
+                    src.get(bytes);
+                    bab.write(bytes, 0, count);
+                    handler.completed(count, attachment);
+                });
+            }
+
+            @Override
+            public Future<Integer> write(ByteBuffer src) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public <A> void read(ByteBuffer dst, A attachment, CompletionHandler<Integer, ? super A> handler) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Future<Integer> read(ByteBuffer dst) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+
+        };
+        try {
+            AsyncEncoder encoder = new AsyncEncoder();
+            assertEquals(expected.length, encoder.encodeAsync(image, channel).get());
+            assertArrayEquals(expected, bab.toByteArray());
+
+            bab.reset();
+            assertEquals(expected.length, encoder.encodeAsync(image, channel).get());
+            assertArrayEquals(expected, bab.toByteArray());
+        } finally {
+            io.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldEncodeOffHeapImage(@TempDir Path directory) throws IOException {
+        Image image = Util.readToImage(Paths.get(fileDirectory + "scribbles.png"));
+        byte[] expected = Files.readAllBytes(Paths.get(fileDirectory + "scribbles.qoi"));
+        int[] row = new int[image.getWidth()];
+
+        try (LargeImage direct = new LargeImage(image.getWidth(), image.getHeight());
+                LargeImage mapped = LargeImage.mapped(directory.resolve("scratch"), image.getWidth(),
+                        image.getHeight())) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < row.length; x++) {
+                    row[x] = image.getPixel(x, y);
+                }
+                direct.setPixels((long) y * row.length, row, 0, row.length);
+                mapped.setPixels((long) y * row.length, row, 0, row.length);
+            }
+            assertEquals(image.getPixel(123, 321), mapped.getPixel(123, 321));
+
+            ByteArrayOutputStream bab = new ByteArrayOutputStream();
+            StandardEncoder.encode(bab, direct);
+            assertArrayEquals(expected, bab.toByteArray());
+            Path path = directory.resolve("scribbles.qoi");
+            StandardEncoder.encode(path, mapped);
+            assertArrayEquals(expected, Files.readAllBytes(path));
+        }
+        assertTrue(Files.notExists(directory.resolve("scratch")));
+    }
+
+    @Test
+    public void shouldRejectImageTooLargeForArray() {
+        assertThrows(IllegalArgumentException.class, () -> new Image(100_000, 100_000));
+        assertThrows(IllegalArgumentException.class, () -> new Image(-1, 10));
+    }
+
+    @Test
+    public void shouldEncodeOpaqueImageLikeRGBAPath(@TempDir Path directory) throws Exception {
+        Image image = new Image(300, 200);
+        Random random = new Random(7);
+        int pixel = 0x808080FF;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int choice = random.nextInt(5);
+                if (choice == 0) {
+                    pixel = random.nextInt() | 0xFF;
+                } else if (choice == 1) {
+                    pixel += 0x01FF0200;
+                }
+                image.setPixel(x, y, pixel);
+            }
+        }
+        byte[] opaque = StandardEncoder.encodeToByteArray(image);
+        ByteArrayOutputStream rgba = new ByteArrayOutputStream();
+        ByteArrayOutputStream rgb = new ByteArrayOutputStream();
+        StreamingEncoder general = new StreamingEncoder(rgba);
+        StreamingEncoder bytes = new StreamingEncoder(rgb);
+        general.begin(image.getWidth(), image.getHeight(), 4);
+        bytes.begin(image.getWidth(), image.getHeight(), 3);
+        int[] row = new int[image.getWidth()];
+        byte[] rowBytes = new byte[image.getWidth() * 3];
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < row.length; x++) {
+                row[x] = image.getPixel(x, y);
+                rowBytes[x * 3] = (byte) (row[x] >>> 24);
+                rowBytes[x * 3 + 1] = (byte) (row[x] >>> 16);
+                rowBytes[x * 3 + 2] = (byte) (row[x] >>> 8);
+            }
+            general.writeRow(row);
+            bytes.writeRow(rowBytes);
+        }
+        general.finish();
+        bytes.finish();
+
+        assertArrayEquals(opaque, rgb.toByteArray());
+        byte[] expected = rgba.toByteArray();
+        assertEquals(4, expected[12]);
+        expected[12] = 3;
+        assertArrayEquals(expected, opaque);
+
+        // alpha left in the pixels of an image declared opaque is ignored by every encoder
+        Image translucent = new Image(1100, 1000);
+        for (int y = 0; y < translucent.getHeight(); y++) {
+            for (int x = 0; x < translucent.getWidth(); x++) {
+                int choice = random.nextInt(5);
+                if (choice == 0) {
+                    pixel = random.nextInt();
+                } else if (choice == 1) {
+                    pixel += 0x01FF0200;
+                }
+                translucent.setPixel(x, y, pixel & ~0xFF | 0x80);
+            }
+        }
+        translucent.setAlpha(false);
+        byte[] standard = StandardEncoder.encodeToByteArray(translucent);
+        assertEquals(0xFF, StandardDecoder.decode(new ByteArrayInputStream(standard)).getPixel(7, 7) & 0xFF);
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+            ParallelEncoder.encode(parallel, translucent, pool);
+            assertArrayEquals(standard, parallel.toByteArray());
+        } finally {
+            pool.shutdown();
+        }
+        Path path = directory.resolve("translucent.qoi");
+        try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            new AsyncEncoder().encodeAsync(translucent, channel, 0).get();
+        }
+        assertArrayEquals(standard, Files.readAllBytes(path));
+        byte[] published = publishThroughFlow(translucent);
+        if (published != null) {
+            assertArrayEquals(standard, published);
+        }
+    }
+
+    @Test
+    public void shouldRoundTripLinearColorSpace() throws IOException {
+        Image image = new Image(4, 4, 0x11223344);
+        image.setLinear(true);
+        byte[] data = StandardEncoder.encodeToByteArray(image);
+
+        assertEquals(1, data[13]);
+        assertTrue(QoiHeader.read(ByteBuffer.wrap(data)).isLinear());
+        Image decoded = StandardDecoder.decode(data);
+        assertTrue(decoded.isLinear());
+        assertImageEquals(image, decoded);
+    }
+
+    @Test
+    public void shouldImportAndExportPixelLayouts() {
+        Image image = new Image(3, 2);
+        image.setPixel(0, 0, 0x11223344);
+        image.setPixel(2, 1, 0xAABBCCFF);
+
+        byte[] bgra = new byte[2 * 16];
+        image.getPixels(bgra, 0, 16, PixelLayout.BGRA);
+        assertArrayEquals(new byte[] { 0x33, 0x22, 0x11, 0x44 }, Arrays.copyOf(bgra, 4));
+        int[] argb = new int[2 * 5 + 1];
+        image.getPixels(argb, 1, 5, PixelLayout.ARGB);
+        assertEquals(0x44112233, argb[1]);
+        assertEquals(0xFFAABBCC, argb[1 + 5 + 2]);
+        int[] bgr = new int[6];
+        image.getPixels(bgr, 0, 3, PixelLayout.BGR);
+        assertEquals(0x00CCBBAA, bgr[5]);
+
+        for (PixelLayout layout : PixelLayout.values()) {
+            int stride = 3 * layout.getBytesPerPixel() + 2;
+            ByteBuffer direct = ByteBuffer.allocateDirect(5 + 2 * stride);
+            image.getPixels(direct, 5, stride, layout);
+            Image copy = new Image(3, 2);
+            copy.setPixels(direct, 5, stride, layout);
+            assertEquals(layout.hasAlpha(), copy.isAlpha());
+            for (int y = 0; y < 2; y++) {
+                for (int x = 0; x < 3; x++) {
+                    int expected = image.getPixel(x, y);
+                    assertEquals(layout.hasAlpha() ? expected : expected | 0xFF, copy.getPixel(x, y));
+                }
+            }
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> image.setPixels(new int[6], 0, 4, PixelLayout.RGBA));
+    }
+
+    @Test
+    public void shouldEncodeRasterInAnyLayout() throws IOException {
+        Image image = Util.readToImage(Paths.get(fileDirectory + "scribbles.png"));
+        byte[] expected = Files.readAllBytes(Paths.get(fileDirectory + "scribbles.qoi"));
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        int[] argb = new int[width * height];
+        image.getPixels(argb, 0, width, PixelLayout.ARGB);
+        ByteArrayOutputStream bab = new ByteArrayOutputStream();
+        StandardEncoder.encode(bab, width, height, argb, 0, width, PixelLayout.ARGB);
+        assertArrayEquals(expected, bab.toByteArray());
+
+        byte[] bgra = new byte[width * 4 * height];
+        image.getPixels(bgra, 0, width * 4, PixelLayout.BGRA);
+        bab.reset();
+        StandardEncoder.encode(bab, width, height, ByteBuffer.wrap(bgra), 0, width * 4, PixelLayout.BGRA);
+        assertArrayEquals(expected, bab.toByteArray());
+
+        Image opaque = new Image(width, height);
+        int[] rgb = new int[width * height];
+        image.getPixels(rgb, 0, width, PixelLayout.RGB);
+        opaque.setPixels(rgb, 0, width, PixelLayout.RGB);
+        byte[] rgbBytes = new byte[width * 3 * height];
+        opaque.getPixels(rgbBytes, 0, width * 3, PixelLayout.RGB);
+        bab.reset();
+        StandardEncoder.encode(bab, width, height, rgbBytes, 0, width * 3, PixelLayout.RGB);
+        assertArrayEquals(StandardEncoder.encodeToByteArray(opaque), bab.toByteArray());
+
+        image.setLinear(true);
+        byte[] linear = StandardEncoder.encodeToByteArray(image);
+        bab.reset();
+        StandardEncoder.encode(bab, width, height, argb, 0, width, PixelLayout.ARGB, true);
+        assertArrayEquals(linear, bab.toByteArray());
+        bab.reset();
+        StandardEncoder.encode(bab, width, height, bgra, 0, width * 4, PixelLayout.BGRA, true);
+        assertArrayEquals(linear, bab.toByteArray());
+        ByteBuffer direct = ByteBuffer.allocateDirect(bgra.length);
+        direct.put(bgra);
+        bab.reset();
+        StandardEncoder.encode(bab, width, height, direct, 0, width * 4, PixelLayout.BGRA, true);
+        assertArrayEquals(linear, bab.toByteArray());
+        assertTrue(StandardDecoder.decode(bab.toByteArray()).isLinear());
+    }
+
+    @Test
+    public void shouldEstimateEncodedSize() throws IOException {
+        Image image = Util.readToImage(Paths.get(fileDirectory + "scribbles.png"));
+        int actual = StandardEncoder.encodeToByteArray(image).length;
+
+        SizeEstimate exact = StandardEncoder.estimateEncodedSize(image, 1);
+        assertTrue(exact.isExact());
+        assertEquals(actual, exact.getEstimatedSize());
+        assertEquals(640 * 400 * 4, exact.getRawSize());
+
+        SizeEstimate sampled = StandardEncoder.estimateEncodedSize(image, 0.1);
+        assertEquals(40, sampled.getSampledRows());
+        assertTrue(Math.abs(sampled.getEstimatedSize() - actual) <= sampled.getErrorBound(), sampled.toString());
+        assertTrue(sampled.getUpperBound() >= actual);
+        assertEquals(StandardEncoder.maxEncodedSize(image), sampled.getWorstCaseSize());
+        assertThrows(IllegalArgumentException.class, () -> StandardEncoder.estimateEncodedSize(image, 0));
+    }
+
+    @Test
+    public void shouldCacheEncodedImagesByContent() throws IOException {
+        Image first = Util.readToImage(Paths.get(fileDirectory + "10x10.png"));
+        Image same = Util.readToImage(Paths.get(fileDirectory + "10x10.png"));
+        Image other = new Image(10, 10);
+        byte[] expected = StandardEncoder.encodeToByteArray(first);
+        int size = expected.length;
+        for (boolean offHeap : new boolean[] { false, true }) {
+            EncodedImageCache cache = new EncodedImageCache(size + 30, offHeap);
+
+            assertArrayEquals(expected, cache.encodeToByteArray(first));
+            ByteArrayOutputStream bab = new ByteArrayOutputStream();
+            cache.encode(bab, same);
+            assertArrayEquals(expected, bab.toByteArray());
+            assertEquals(1, cache.getMisses());
+            assertEquals(1, cache.getHits());
+            assertEquals(size, cache.getBytes());
+
+            same.setPixel(3, 3, 0x12345678);
+            assertArrayEquals(StandardEncoder.encodeToByteArray(same), cache.encodeToByteArray(same));
+            assertEquals(2, cache.getMisses());
+            assertEquals(1, cache.getEvictions());
+            assertEquals(1, cache.getEntryCount());
+            assertEquals(StandardEncoder.encodeToByteArray(other).length, cache.encodeToBuffer(other).remaining());
+            same.setPixel(3, 3, first.getPixel(3, 3));
+            same.setAlpha(first.isAlpha());
+        }
+    }
+
+    @Test
+    public void shouldCacheImagesEncodedAtWorstCase() {
+        Image empty = new Image(0, 0);
+        Image translucent = new Image(1, 1, 0x11223344);
+        for (boolean offHeap : new boolean[] { false, true }) {
+            EncodedImageCache cache = new EncodedImageCache(1024, offHeap);
+            for (Image image : new Image[] { empty, translucent }) {
+                byte[] expected = StandardEncoder.encodeToByteArray(image);
+                assertArrayEquals(expected, cache.encodeToByteArray(image));
+                assertArrayEquals(expected, cache.encodeToByteArray(image));
+            }
+            assertEquals(2, cache.getMisses());
+            assertEquals(2, cache.getHits());
+            assertEquals(2, cache.getEntryCount());
+        }
+    }
+
+    @Test
+    public void shouldTranscodeDirectoryThroughPipeline(@TempDir Path directory) throws Exception {
+        Path source = directory.resolve("png");
+        Path target = directory.resolve("qoi");
+        Files.createDirectories(source.resolve("nested"));
+        Files.copy(Paths.get(fileDirectory + "10x10.png"), source.resolve("10x10.png"));
+        Files.copy(Paths.get(fileDirectory + "scribbles.png"), source.resolve("nested/scribbles.png"));
+        Files.write(source.resolve("broken.png"), new byte[] { 1, 2, 3 });
+        TranscodePipeline pipeline = new TranscodePipeline();
+        pipeline.setDecodeThreads(2);
+        pipeline.setEncodeThreads(2);
+        pipeline.setQueueCapacity(1);
+
+        TranscodeResult result = pipeline.transcodeDirectory(source, target);
+
+        assertEquals(3, result.getFiles());
+        assertEquals(2, result.getConverted());
+        assertTrue(result.getFailures().containsKey(source.resolve("broken.png")));
+        assertArrayEquals(Files.readAllBytes(Paths.get(fileDirectory + "10x10.qoi")),
+                Files.readAllBytes(target.resolve("10x10.qoi")));
+        assertArrayEquals(Files.readAllBytes(Paths.get(fileDirectory + "scribbles.qoi")),
+                Files.readAllBytes(target.resolve("nested/scribbles.qoi")));
+        StageStatistics encode = result.getStages().get(2);
+        assertEquals("encode", encode.getName());
+        assertEquals(2, encode.getItems());
+        assertEquals(100 + 640 * 400, encode.getUnits());
+    }
+
+    @Test
+    public void shouldTranscodeImageEncodedAtWorstCase(@TempDir Path directory) throws Exception {
+        BufferedImage translucent = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        translucent.setRGB(0, 0, 0x44112233);
+        Path source = directory.resolve("translucent.png");
+        Path target = directory.resolve("translucent.qoi");
+        ImageIO.write(translucent, "png", source.toFile());
+
+        TranscodeResult result = new TranscodePipeline().transcode(Arrays.asList(source), Arrays.asList(target));
+
+        assertEquals(1, result.getConverted(), () -> result.getFailures().toString());
+        assertArrayEquals(StandardEncoder.encodeToByteArray(new Image(1, 1, 0x11223344)), Files.readAllBytes(target));
+    }
+
+    @Test
+    public void shouldSurviveErrorInPipelineStage(@TempDir Path directory) throws Exception {
+        Path good = directory.resolve("10x10.png");
+        Path fatal = directory.resolve("fatal.png");
+        Path alsoFatal = directory.resolve("also-fatal.png");
+        Files.copy(Paths.get(fileDirectory + "10x10.png"), good);
+        Files.write(fatal, "FATAL".getBytes("US-ASCII"));
+        Files.write(alsoFatal, "FATAL".getBytes("US-ASCII"));
+        // ImageIO asks every reader whether it can decode; this one fails like a reader running out of memory
+        ImageReaderSpi failing = new ImageReaderSpi() {
+            @Override
+            public boolean canDecodeInput(Object source) throws IOException {
+                ImageInputStream in = (ImageInputStream) source;
+                byte[] magic = new byte[5];
+                in.mark();
+                try {
+                    in.readFully(magic);
+                } catch (EOFException e) {
+                    return false;
+                } finally {
+                    in.reset();
+                }
+                if (Arrays.equals(magic, "FATAL".getBytes("US-ASCII"))) {
+                    throw new OutOfMemoryError("simulated");
+                }
+                return false;
+            }
+
+            @Override
+            public ImageReader createReaderInstance(Object extension) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public String getDescription(Locale locale) {
+                return "failing test reader";
+            }
+        };
+        IIORegistry.getDefaultInstance().registerServiceProvider(failing, ImageReaderSpi.class);
+        try {
+            TranscodePipeline pipeline = new TranscodePipeline();
+            pipeline.setDecodeThreads(1);
+            pipeline.setQueueCapacity(1);
+
+            TranscodeResult result = assertTimeoutPreemptively(Duration.ofSeconds(30),
+                    () -> pipeline.transcode(Arrays.asList(fatal, good, alsoFatal),
+                            Arrays.asList(directory.resolve("a.qoi"), directory.resolve("b.qoi"),
+                                    directory.resolve("c.qoi"))));
+
+            assertEquals(1, result.getConverted());
+            assertTrue(result.getFailures().get(fatal) instanceof OutOfMemoryError);
+            assertTrue(result.getFailures().get(alsoFatal) instanceof OutOfMemoryError);
+            assertArrayEquals(Files.readAllBytes(Paths.get(fileDirectory + "10x10.qoi")),
+                    Files.readAllBytes(directory.resolve("b.qoi")));
+        } finally {
+            IIORegistry.getDefaultInstance().deregisterServiceProvider(failing, ImageReaderSpi.class);
+        }
+    }
+
+    @Test
+    public void shouldRoundTripDeflateContainer() throws IOException {
+        Image image = Util.readToImage(Paths.get(fileDirectory + "scribbles.png"));
+        byte[] qoi = Files.readAllBytes(Paths.get(fileDirectory + "scribbles.qoi"));
+        for (int level : new int[] { 0, 1, 9 }) {
+            ByteArrayOutputStream bab = new ByteArrayOutputStream();
+            try (QoizOutputStream out = new QoizOutputStream(bab, level, 50_000)) {
+                StandardEncoder.encode(out, image);
+            }
+            if (level > 0) {
+                assertTrue(bab.size() < qoi.length);
+            }
+
+            QoizInputStream in = new QoizInputStream(new ByteArrayInputStream(bab.toByteArray()));
+            assertEquals(level, in.getLevel());
+            ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+            byte[] buffer = new byte[7000];
+            for (int n; (n = in.read(buffer)) > 0;) {
+                inflated.write(buffer, 0, n);
+            }
+            assertArrayEquals(qoi, inflated.toByteArray());
+        }
+
+        ByteArrayOutputStream bab = new ByteArrayOutputStream();
+        QoizOutputStream.encode(bab, image, 6);
+        assertImageEquals(image, QoizInputStream.decode(new ByteArrayInputStream(bab.toByteArray())));
+        assertThrows(IOException.class, () -> new QoizInputStream(new ByteArrayInputStream(qoi)));
+
+        // stored blocks of a few bytes are the largest relative to their input
+        Image small = new Image(4, 4);
+        small.setPixel(1, 2, 0x11223344);
+        byte[] smallQoi = StandardEncoder.encodeToByteArray(small);
+        for (int blockSize : new int[] { 1, 2, 3, 5, 16 }) {
+            ByteArrayOutputStream stored = new ByteArrayOutputStream();
+            try (QoizOutputStream out = new QoizOutputStream(stored, 0, blockSize)) {
+                out.write(smallQoi);
+            }
+            assertImageEquals(small, QoizInputStream.decode(new ByteArrayInputStream(stored.toByteArray())));
+        }
+
+        // sizes from a corrupt header are rejected before anything is allocated for them
+        ByteBuffer hostile = ByteBuffer.allocate(18);
+        hostile.put("qoiz".getBytes("US-ASCII")).put((byte) 1).put((byte) 1).putInt(Integer.MAX_VALUE);
+        assertThrows(IOException.class, () -> new QoizInputStream(new ByteArrayInputStream(hostile.array())));
+        hostile.putInt(6, 1024).putInt(Integer.MAX_VALUE).putInt(100);
+        QoizInputStream huge = new QoizInputStream(new ByteArrayInputStream(hostile.array()));
+        assertThrows(IOException.class, huge::read);
+        assertThrows(IllegalArgumentException.class,
+                () -> new QoizOutputStream(new ByteArrayOutputStream(), 1, QoizOutputStream.MaxBlockSize + 1));
+    }
+
+    @Test
+    public void shouldEncodeFrameSequenceWithDeltas(@TempDir Path directory) throws IOException {
+        Image background = Util.readToImage(Paths.get(fileDirectory + "scribbles.png"));
+        int width = background.getWidth();
+        int[] pixels = new int[width * background.getHeight()];
+        background.getPixels(pixels, 0, width, PixelLayout.RGBA);
+        List<Image> frames = new ArrayList<>();
+        long standalone = 0;
+        for (int f = 0; f < 10; f++) {
+            Image frame = new Image(width, background.getHeight());
+            frame.setPixels(pixels, 0, width, PixelLayout.RGBA);
+            if (f != 4) {
+                // a box moving across, with a frame in the middle unchanged
+                for (int y = 20; y < 40; y++) {
+                    for (int x = f * 10; x < f * 10 + 20; x++) {
+                        frame.setPixel(x, y, 0x3366CCFF + f * 0x01010100);
+                    }
+                }
+            } else {
+                frame = frames.get(3);
+            }
+            frames.add(frame);
+            standalone += StandardEncoder.encodeToByteArray(frame).length;
+        }
+
+        Path path = directory.resolve("frames.qois");
+        try (SequenceEncoder encoder = new SequenceEncoder(Files.newOutputStream(path), width,
+                background.getHeight(), background.isAlpha())) {
+            encoder.setKeyFrameInterval(4);
+            for (Image frame : frames) {
+                encoder.writeFrame(frame);
+            }
+        }
+        assertTrue(Files.size(path) * 2 < standalone);
+
+        SequenceDecoder decoder = new SequenceDecoder(ByteBuffer.wrap(Files.readAllBytes(path)));
+        assertEquals(frames.size(), decoder.getFrameCount());
+        assertTrue(decoder.isKeyFrame(8));
+        assertTrue(!decoder.isKeyFrame(7));
+        for (Image frame : frames) {
+            assertImageEquals(frame, decoder.nextFrame());
+        }
+        assertEquals(null, decoder.nextFrame());
+
+        try (SequenceDecoder file = SequenceDecoder.open(path)) {
+            for (int f : new int[] { 7, 2, 3, 9, 0, 6 }) {
+                assertImageEquals(frames.get(f), file.readFrame(f));
+            }
+            assertThrows(IndexOutOfBoundsException.class, () -> file.readFrame(10));
+        }
+    }
+
+    @Test
+    public void shouldDecodeThumbnailWithoutFullImage() throws IOException {
+        Path path = Paths.get(fileDirectory + "scribbles.qoi");
+        Image full = StandardDecoder.decode(path);
+        int width = full.getWidth() / 3;
+        int height = full.getHeight() / 5;
+        Image nearest = StandardDecoder.decodeThumbnail(path, width, height, ThumbnailFilter.NEAREST);
+        assertEquals(width, nearest.getWidth());
+        assertEquals(height, nearest.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int sx = (2 * x + 1) * full.getWidth() / (2 * width);
+                int sy = (2 * y + 1) * full.getHeight() / (2 * height);
+                assertEquals(full.getPixel(sx, sy), nearest.getPixel(x, y));
+            }
+        }
+
+        // 2x2 blocks of one color average to that color
+        Random random = new Random(7);
+        Image blocks = new Image(9, 6);
+        for (int y = 0; y < 6; y += 2) {
+            for (int x = 0; x < 9; x++) {
+                int pixel = x % 2 == 0 ? random.nextInt() | 0x01 : blocks.getPixel(x - 1, y);
+                blocks.setPixel(x, y, pixel);
+                blocks.setPixel(x, y + 1, pixel);
+            }
+        }
+        byte[] encoded = StandardEncoder.encodeToByteArray(blocks);
+        Image box = new StandardDecoder(new ByteArrayInputStream(encoded)).decodeScaled(2, ThumbnailFilter.BOX);
+        assertEquals(5, box.getWidth());
+        assertEquals(3, box.getHeight());
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 4; x++) {
+                assertEquals(blocks.getPixel(x * 2, y * 2), box.getPixel(x, y));
+            }
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> new StandardDecoder(ByteBuffer.wrap(encoded)).decodeThumbnail(10, 3, ThumbnailFilter.BOX));
+    }
+
+    @Test
+    public void shouldPublishEncodedBlocksOnDemand() throws Exception {
+        // FlowEncoder is only in the multi-release JAR, so this runs against the JAR on Java 9 and later
+        Class<?> encoderClass;
+        try {
+            encoderClass = Class.forName("xyz.trevorkropp.qoi.FlowEncoder");
+        } catch (ClassNotFoundException e) {
+            assumeTrue(false, "FlowEncoder needs the multi-release JAR on Java 9 or later");
+            return;
+        }
+        Image image = Util.readToImage(Paths.get(fileDirectory + "scribbles.png"));
+        Object encoder = encoderClass.getConstructor(Image.class, Executor.class, int.class)
+                .newInstance(image, (Executor) Runnable::run, 4096);
+        Class<?> subscriberClass = Class.forName("java.util.concurrent.Flow$Subscriber");
+        Method request = Class.forName("java.util.concurrent.Flow$Subscription").getMethod("request", long.class);
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Object[] subscription = new Object[1];
+        List<String> signals = new ArrayList<>();
+        Object subscriber = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { subscriberClass },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "onSubscribe":
+                            subscription[0] = args[0];
+                            break;
+                        case "onNext":
+                            ByteBuffer block = (ByteBuffer) args[0];
+                            received.write(block.array(), block.arrayOffset() + block.position(), block.remaining());
+                            break;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            break;
+                    }
+                    signals.add(method.getName());
+                    return null;
+                });
+        encoderClass.getMethod("subscribe", subscriberClass).invoke(encoder, subscriber);
+        assertEquals(0, received.size());
+
+        request.invoke(subscription[0], 1L);
+        assertTrue(received.size() > 4000 && received.size() <= 4096);
+        request.invoke(subscription[0], 2L);
+        assertEquals(Arrays.asList("onSubscribe", "onNext", "onNext", "onNext"), signals);
+        request.invoke(subscription[0], Long.MAX_VALUE);
+        assertEquals("onComplete", signals.get(signals.size() - 1));
+        assertArrayEquals(StandardEncoder.encodeToByteArray(image), received.toByteArray());
+    }
+
+    @Test
+    public void shouldRecolorOnlyTransparentPixelsAtHigherEffort() throws IOException {
+        Image image = Util.readToImage(Paths.get(fileDirectory + "scribbles.png"));
+        Random random = new Random(3);
+        int transparent = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if ((image.getPixel(x, y) & 0xFF) == 0) {
+                    // what image editors often leave behind in invisible pixels
+                    image.setPixel(x, y, random.nextInt() & 0xFFFFFF00);
+                    transparent++;
+                }
+            }
+        }
+        assertTrue(transparent > 0);
+        byte[] exact = StandardEncoder.encodeToByteArray(image);
+        ByteArrayOutputStream bab = new ByteArrayOutputStream();
+        StandardEncoder.encode(bab, image, 0);
+        assertArrayEquals(exact, bab.toByteArray());
+
+        int previousSize = exact.length;
+        for (int effort = 1; effort <= StandardEncoder.MaxEffort; effort++) {
+            bab = new ByteArrayOutputStream();
+            StandardEncoder.encode(bab, image, effort);
+            assertTrue(bab.size() <= previousSize);
+            assertTrue(bab.size() < exact.length * 3 / 4);
+            previousSize = bab.size();
+            Image decoded = StandardDecoder.decode(bab.toByteArray());
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    int pixel = image.getPixel(x, y);
+                    if ((pixel & 0xFF) == 0) {
+                        assertEquals(0, decoded.getPixel(x, y) & 0xFF);
+                    } else {
+                        assertEquals(pixel, decoded.getPixel(x, y));
+                    }
+                }
+            }
+        }
+
+        Image opaque = Util.readToImage(Paths.get(fileDirectory + "10x10.png"));
+        bab = new ByteArrayOutputStream();
+        StandardEncoder.encode(bab, opaque, StandardEncoder.MaxEffort);
+        assertArrayEquals(StandardEncoder.encodeToByteArray(opaque), bab.toByteArray());
+        assertThrows(IllegalArgumentException.class, () -> new StandardEncoder().setEffort(3));
+    }
+
+    @Test
+    public void shouldNeverGrowOutputAtHigherEffort() throws IOException {
+        Random random = new Random(11);
+        for (int n = 0; n < 2000; n++) {
+            Image image = new Image(1 + random.nextInt(24), 1 + random.nextInt(24));
+            // few colors make for cache hits and runs that recoloring could spoil
+            int[] palette = new int[1 + random.nextInt(12)];
+            for (int i = 0; i < palette.length; i++) {
+                palette[i] = random.nextInt();
+            }
+            int transparency = random.nextInt(4);
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    int pixel = random.nextBoolean() ? palette[random.nextInt(palette.length)] : random.nextInt();
+                    image.setPixel(x, y, random.nextInt(4) < transparency ? pixel & 0xFFFFFF00 : pixel | 0xFF);
+                }
+            }
+            int exact = StandardEncoder.encodeToByteArray(image).length;
+            for (int effort = 1; effort <= StandardEncoder.MaxEffort; effort++) {
+                ByteArrayOutputStream bab = new ByteArrayOutputStream();
+                StandardEncoder.encode(bab, image, effort);
+                assertTrue(bab.size() <= exact);
+            }
+        }
+    }
+
+    @Test
+    public void shouldMatchScalarKernelsWithVectorKernels() throws Exception {
+        // VectorKernels is only in the multi-release JAR and needs the incubator module, as in the failsafe run
+        Class<?> vectorClass;
+        try {
+            Class.forName("jdk.incubator.vector.IntVector");
+            vectorClass = Class.forName("xyz.trevorkropp.qoi.VectorKernels");
+        } catch (ClassNotFoundException e) {
+            assumeTrue(false, "VectorKernels needs the multi-release JAR and jdk.incubator.vector");
+            return;
+        }
+        Class<?> scalarClass = Class.forName("xyz.trevorkropp.qoi.ScalarKernels");
+        Class<?> kernelsClass = Class.forName("xyz.trevorkropp.qoi.PixelKernels");
+        Method vectorRunLength = kernelMethod(vectorClass, "runLength", int[].class, int.class, int.class, int.class);
+        Method scalarRunLength = kernelMethod(scalarClass, "runLength", int[].class, int.class, int.class, int.class);
+        Method matchLength = kernelMethod(kernelsClass, "matchLength", int[].class, int[].class, int.class, int.class);
+        Method scalarMatchLength = kernelMethod(scalarClass, "matchLength", int[].class, int[].class, int.class,
+                int.class);
+        Method vectorClassify = kernelMethod(vectorClass, "classify", int[].class, int.class, int.class, int.class,
+                int[].class, int.class);
+        Method scalarClassify = kernelMethod(scalarClass, "classify", int[].class, int.class, int.class, int.class,
+                int[].class, int.class);
+        Field species = vectorClass.getDeclaredField("Species");
+        species.setAccessible(true);
+        int lanes = (Integer) Class.forName("jdk.incubator.vector.VectorSpecies").getMethod("length")
+                .invoke(species.get(null));
+
+        Random random = new Random(13);
+        for (int length = 0; length <= 2 * lanes; length++) {
+            for (int from = 0; from < lanes; from++) {
+                int to = from + length;
+                int[] pixels = new int[to + lanes];
+                int[] same = new int[pixels.length];
+                for (int stop = 0; stop <= length; stop++) {
+                    // the differing pixel is just past the range when stop is its length
+                    Arrays.fill(pixels, 0x11223344);
+                    Arrays.fill(same, 0x11223344);
+                    pixels[from + stop] = 0x11223345;
+                    assertEquals(scalarRunLength.invoke(null, pixels, from, to, 0x11223344),
+                            vectorRunLength.invoke(null, pixels, from, to, 0x11223344));
+                    assertEquals(scalarMatchLength.invoke(null, pixels, same, from, to),
+                            matchLength.invoke(null, pixels, same, from, to));
+                }
+
+                // small steps between pixels give every chunk op, runs included
+                int[] palette = { 0, 0xFF, 0x7F7F7FFF, 0xFFFFFFFF, random.nextInt() };
+                for (int n = 0; n < 8; n++) {
+                    for (int i = 0; i < pixels.length; i++) {
+                        int step = random.nextInt(4);
+                        pixels[i] = step == 0 ? palette[random.nextInt(palette.length)]
+                                : step == 1 ? random.nextInt()
+                                : i == 0 ? random.nextInt() : pixels[i - 1] + (random.nextInt(9) - 4) * 0x01010100
+                                        + (random.nextInt(3) - 1) * 0x00010000;
+                    }
+                    int prev = random.nextBoolean() ? pixels[from] : random.nextInt();
+                    int codesOffset = random.nextInt(3);
+                    int[] expected = new int[codesOffset + length + 1];
+                    int[] actual = new int[expected.length];
+                    Arrays.fill(expected, -1);
+                    Arrays.fill(actual, -1);
+                    scalarClassify.invoke(null, pixels, from, to, prev, expected, codesOffset);
+                    vectorClassify.invoke(null, pixels, from, to, prev, actual, codesOffset);
+                    assertArrayEquals(expected, actual);
+                }
+            }
+        }
+    }
+
+    private static Method kernelMethod(Class<?> kernels, String name, Class<?>... parameterTypes)
+            throws NoSuchMethodException {
+        Method method = kernels.getDeclaredMethod(name, parameterTypes);
+        method.setAccessible(true);
+        return method;
+    }
+
+    /**
+     * Encodes through FlowEncoder, and so BlockEncoder, requesting every
+     * block at once; null if FlowEncoder is not available.
+     */
+    private byte[] publishThroughFlow(Image image) throws Exception {
+        Class<?> encoderClass;
+        try {
+            encoderClass = Class.forName("xyz.trevorkropp.qoi.FlowEncoder");
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        Object encoder = encoderClass.getConstructor(Image.class, Executor.class, int.class)
+                .newInstance(image, (Executor) Runnable::run, 4096);
+        Class<?> subscriberClass = Class.forName("java.util.concurrent.Flow$Subscriber");
+        Method request = Class.forName("java.util.concurrent.Flow$Subscription").getMethod("request", long.class);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Object subscriber = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { subscriberClass },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "onSubscribe":
+                            request.invoke(args[0], Long.MAX_VALUE);
+                            return null;
+                        case "onNext":
+                            ByteBuffer block = (ByteBuffer) args[0];
+                            received.write(block.array(), block.arrayOffset() + block.position(), block.remaining());
+                            return null;
+                        case "onError":
+                            throw new AssertionError((Throwable) args[0]);
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+        encoderClass.getMethod("subscribe", subscriberClass).invoke(encoder, subscriber);
+        return received.toByteArray();
+    }
+
+    private void assertImageEquals(Image expected, Image actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.isAlpha(), actual.isAlpha());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getPixel(x, y), actual.getPixel(x, y), "pixel at " + x + "," + y);
+            }
+        }
+    }
+
 }